@@ -0,0 +1,82 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.benchmark;
+
+import fr.insalyon.creatis.gasw.GaswConfiguration;
+import fr.insalyon.creatis.gasw.GaswConstants;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracJdlGenerator;
+import fr.insalyon.creatis.gasw.util.VelocityUtil;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JDLs generated per second. The legacy generation is the one
+ * DiracJdlGenerator used before caching its templates: a new VelocityUtil,
+ * so a new engine and template, and the file paths resolved for each job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiracJdlGeneratorBenchmark {
+
+    private DiracJdlGenerator generator;
+    private int counter;
+
+    @Setup
+    public void createGenerator() throws Exception {
+        DiracConfiguration.setConfiguration("host", "defaultPool", 0, "mysqlHost", 3306, "mysqlUser",
+                false, 3306, false, true,
+                Arrays.asList("first.banned.site", "second.banned.site"),
+                Arrays.asList("Any", "Multiple"),
+                Arrays.asList("Strasbourg"),
+                Arrays.asList(),
+                "/test/path/to/diracosrc");
+        generator = DiracJdlGenerator.getInstance();
+        if (!generator.generate("command-0.sh").equals(legacyGenerate("command-0.sh"))) {
+            throw new IllegalStateException("the cached and legacy JDLs differ");
+        }
+    }
+
+    private String nextScriptName() {
+        return "command-" + (counter++ % 10000) + ".sh";
+    }
+
+    @Benchmark
+    public String legacyGeneration() throws Exception {
+        return legacyGenerate(nextScriptName());
+    }
+
+    @Benchmark
+    public String cachedGeneration() {
+        return generator.generate(nextScriptName());
+    }
+
+    private String legacyGenerate(String scriptName) throws Exception {
+        String jobName = scriptName.split("\\.")[0] + " - " + GaswConfiguration.getInstance().getSimulationID();
+
+        VelocityUtil velocity = new VelocityUtil("vm/jdl/dirac-jdl.vm");
+        velocity.put("jobName", jobName);
+        velocity.put("jobGroup", generator.getJobGroup());
+        velocity.put("scriptPath", new File(GaswConstants.SCRIPT_ROOT).getAbsolutePath());
+        velocity.put("scriptName", scriptName);
+        velocity.put("cpuTime", GaswConfiguration.getInstance().getDefaultCPUTime());
+        velocity.put("priority", DiracConfiguration.getInstance().getDefaultPriority());
+        velocity.put("site", String.join(",", DiracConfiguration.getInstance().getSites()));
+        velocity.put("bannedSite", String.join(",", DiracConfiguration.getInstance().getBannedSites()));
+        List<String> tags = DiracConfiguration.getInstance().getTags();
+        velocity.put("tags", String.join(",", tags));
+
+        velocity.put("invName", scriptName.replace(".sh", "") + "-invocation.json");
+        velocity.put("configName", scriptName.replace(".sh", "") + "-configuration.sh");
+        velocity.put("invPath", new File(GaswConstants.INVOCATION_DIR).getAbsolutePath());
+        velocity.put("configPath", new File(GaswConstants.CONFIG_DIR).getAbsolutePath());
+        velocity.put("workflowFile", new File(GaswConfiguration.getInstance().getBoutiquesFilename()).getAbsolutePath());
+
+        return velocity.merge().toString();
+    }
+}
@@ -0,0 +1,70 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.benchmark;
+
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracEnvironment;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracProcessUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Latency of running a dirac-* command, either sourcing the diracosrc file
+ * in a new bash each time or launching it directly with the cached
+ * environment. The fake rc file does some work to stand for the real one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DiracSpawnBenchmark {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+
+    private Path tempDir;
+    private String diracosrc;
+    private DiracEnvironment environment;
+
+    @Setup
+    public void createFakeDirac() throws IOException {
+        tempDir = Files.createTempDirectory("dirac-spawn-benchmark");
+        Path bin = Files.createDirectory(tempDir.resolve("bin"));
+        Path command = Files.writeString(bin.resolve("dirac-wms-job-status"),
+                "#!/bin/sh\nfor id in \"$@\"; do echo \"JobID=$id Status=Running; Site=FAKE.site.fr;\"; done\n");
+        command.toFile().setExecutable(true);
+
+        StringBuilder rc = new StringBuilder("export PATH=" + bin + ":$PATH\n");
+        for (int i = 0; i < 200; i++) {
+            rc.append("export FAKE_DIRAC_VAR_").append(i).append("=\"$(echo value").append(i).append(")\"\n");
+        }
+        diracosrc = Files.writeString(tempDir.resolve("diracosrc"), rc).toString();
+        environment = new DiracEnvironment(diracosrc);
+    }
+
+    @TearDown
+    public void deleteFakeDirac() throws IOException {
+        try (var files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int sourcedProcess() throws IOException, InterruptedException {
+        return run(DiracProcessUtils.getSourcedProcess(logger, diracosrc, "dirac-wms-job-status", "1", "2"));
+    }
+
+    @Benchmark
+    public int cachedEnvironmentProcess() throws IOException, InterruptedException {
+        return run(environment.start("dirac-wms-job-status", "1", "2"));
+    }
+
+    private int run(Process process) throws IOException, InterruptedException {
+        int read = process.getInputStream().readAllBytes().length;
+        process.waitFor();
+        return read;
+    }
+}
@@ -0,0 +1,82 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.benchmark;
+
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracStatus;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracStatusLine;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of a recorded dirac-wms-job-status output of 1000 jobs mixing
+ * both line formats. The legacy parser is the split/replace/HashMap one the
+ * monitor used before DiracStatusLine. Run with -prof gc to compare the
+ * allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiracStatusParserBenchmark {
+
+    private List<String> lines;
+
+    @Setup
+    public void loadOutput() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/dirac-wms-job-status.txt")) {
+            lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+
+    @Benchmark
+    public void legacyParser(Blackhole bh) {
+        for (String s : lines) {
+            if (s.contains("JobID=")) {
+                Map<String, String> infos = getJobInfos(s);
+                bh.consume(infos.get("JobID"));
+                bh.consume(DiracStatus.valueOf(infos.get("Status")));
+                bh.consume(infos.get("Site"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void statusLineParser(Blackhole bh) {
+        for (String s : lines) {
+            DiracStatusLine line = DiracStatusLine.parse(s);
+            if (line != null) {
+                bh.consume(line.getJobId());
+                bh.consume(line.getStatus());
+                bh.consume(line.getSite());
+            }
+        }
+    }
+
+    private static Map<String, String> getJobInfos(String diracStatusLine) {
+        String[] lineParts = diracStatusLine.split(" ");
+        Map<String, String> infoMap = new HashMap<>();
+        enrich(infoMap, lineParts[0], "JobID");
+        diracStatusLine = diracStatusLine.substring(diracStatusLine.indexOf(" ") + 1);
+        lineParts = diracStatusLine.split(";");
+        for (String linePart : lineParts) {
+            enrich(infoMap, linePart, "Status");
+            enrich(infoMap, linePart, "Site");
+        }
+        return infoMap;
+    }
+
+    private static void enrich(Map<String, String> infoMap, String linePart, String key) {
+        linePart = linePart.trim();
+        String searchedText = key + "=";
+        if (linePart.startsWith(searchedText)) {
+            infoMap.put(key, linePart.replace(searchedText, "").trim());
+        }
+    }
+}
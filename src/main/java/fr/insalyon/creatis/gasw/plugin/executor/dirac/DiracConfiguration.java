@@ -59,6 +59,54 @@ public class DiracConfiguration {
     private List<Object> siteNames;
     private List<Object> tags;
     private String diracosrcPath;
+    private boolean diracosrcCacheEnabled = false;
+    private boolean workerEnabled = false;
+    private int workerPoolSize = 2;
+    private int workerTimeout = 600;
+    private int statusChunkSize = 1000;
+    private int statusWorkers = 4;
+    private boolean statusByJobGroupEnabled = true;
+    private int statusFullPollingCycles = 10;
+    private int outputWorkers = 10;
+    private int outputQueueSize = 1000;
+    private int outputBatchSize = 100;
+    private int outputRetries = 3;
+    private int outputRetryDelay = 10;
+    private int killLinger = 2;
+    private int submitWorkers = 4;
+    private int submitBatchSize = 100;
+    // milliseconds waited after a job is added to the pool, to gather more jobs
+    private int submitLinger = 500;
+    // lowest number of seconds a claimed job pool entry is held before another node can take it
+    private int submitLease = 600;
+    // jobs per second, adapted between the two bounds
+    private int submitRateMin = 1;
+    private int submitRateMax = 100;
+    // seconds after which a submission is seen as slow and the rate lowered
+    private int submitSlow = 60;
+    // active jobs allowed per simulation, 0 for no limit
+    private int submitMaxActive = 0;
+    // first attempts of a command submitted together as a parametric job
+    private boolean submitParametric = false;
+    private int submitPipelineWorkers = 4;
+    private int submitPipelineQueueSize = 10000;
+    // seconds after which a command without recent job outcomes is forgotten
+    private int faultySitesTtl = 86400;
+    // commands, and sites per command, tracked at most for the dynamic ban
+    private int faultySitesMax = 1000;
+    // seconds after which a job outcome counts for half in the reliability of a site
+    private int siteReliabilityWindow = 3600;
+    // a site is banned once it has this many decayed failures, making up this percentage of its jobs
+    private int siteReliabilityMinFailures = 3;
+    private int siteReliabilityFailureRatio = 80;
+    // configured sites dropped from the JDL when their turnaround is this many times the fastest one
+    private boolean siteSelectionEnabled = false;
+    private int siteSelectionSlowdown = 3;
+    private int siteSelectionMin = 2;
+    // seconds after which the statistics of a site without new jobs are dropped, so that it is tried again
+    private int siteSelectionMaxAge = 3600;
+    // index created at startup on the invocation ID of the GASW Jobs table, which is not ours to change by default
+    private boolean jobsInvocationIndex = false;
 
     public static DiracConfiguration getInstance() throws GaswException {
         if (instance == null) {
@@ -156,6 +204,41 @@ public class DiracConfiguration {
             siteNames = config.getList(DiracConstants.LAB_CONF_SITE_NAMES, Arrays.asList());
             tags = config.getList(DiracConstants.LAB_TAGS, Arrays.asList());
             diracosrcPath = config.getString(DiracConstants.LAB_CONF_DIRACOSRC_FILEPATH, "/vip/dirac/diracos/diracosrc");
+            diracosrcCacheEnabled = config.getBoolean(DiracConstants.LAB_CONF_DIRACOSRC_CACHE_ENABLED, diracosrcCacheEnabled);
+            workerEnabled = config.getBoolean(DiracConstants.LAB_WORKER_ENABLED, workerEnabled);
+            workerPoolSize = config.getInt(DiracConstants.LAB_WORKER_POOL_SIZE, workerPoolSize);
+            workerTimeout = config.getInt(DiracConstants.LAB_WORKER_TIMEOUT, workerTimeout);
+            statusChunkSize = config.getInt(DiracConstants.LAB_STATUS_CHUNK_SIZE, statusChunkSize);
+            statusWorkers = config.getInt(DiracConstants.LAB_STATUS_WORKERS, statusWorkers);
+            statusByJobGroupEnabled = config.getBoolean(DiracConstants.LAB_STATUS_JOBGROUP_ENABLED, statusByJobGroupEnabled);
+            statusFullPollingCycles = config.getInt(DiracConstants.LAB_STATUS_FULL_POLLING_CYCLES, statusFullPollingCycles);
+            outputWorkers = config.getInt(DiracConstants.LAB_OUTPUT_WORKERS, outputWorkers);
+            outputQueueSize = config.getInt(DiracConstants.LAB_OUTPUT_QUEUE_SIZE, outputQueueSize);
+            outputBatchSize = config.getInt(DiracConstants.LAB_OUTPUT_BATCH_SIZE, outputBatchSize);
+            outputRetries = config.getInt(DiracConstants.LAB_OUTPUT_RETRIES, outputRetries);
+            outputRetryDelay = config.getInt(DiracConstants.LAB_OUTPUT_RETRY_DELAY, outputRetryDelay);
+            killLinger = config.getInt(DiracConstants.LAB_KILL_LINGER, killLinger);
+            submitWorkers = config.getInt(DiracConstants.LAB_SUBMIT_WORKERS, submitWorkers);
+            submitBatchSize = config.getInt(DiracConstants.LAB_SUBMIT_BATCH_SIZE, submitBatchSize);
+            submitLinger = config.getInt(DiracConstants.LAB_SUBMIT_LINGER, submitLinger);
+            submitLease = config.getInt(DiracConstants.LAB_SUBMIT_LEASE, submitLease);
+            submitRateMin = config.getInt(DiracConstants.LAB_SUBMIT_RATE_MIN, submitRateMin);
+            submitRateMax = config.getInt(DiracConstants.LAB_SUBMIT_RATE_MAX, submitRateMax);
+            submitSlow = config.getInt(DiracConstants.LAB_SUBMIT_SLOW, submitSlow);
+            submitMaxActive = config.getInt(DiracConstants.LAB_SUBMIT_MAX_ACTIVE, submitMaxActive);
+            submitParametric = config.getBoolean(DiracConstants.LAB_SUBMIT_PARAMETRIC, submitParametric);
+            submitPipelineWorkers = config.getInt(DiracConstants.LAB_SUBMIT_PIPELINE_WORKERS, submitPipelineWorkers);
+            submitPipelineQueueSize = config.getInt(DiracConstants.LAB_SUBMIT_PIPELINE_QUEUE_SIZE, submitPipelineQueueSize);
+            faultySitesTtl = config.getInt(DiracConstants.LAB_FAULTY_SITES_TTL, faultySitesTtl);
+            faultySitesMax = config.getInt(DiracConstants.LAB_FAULTY_SITES_MAX, faultySitesMax);
+            siteReliabilityWindow = config.getInt(DiracConstants.LAB_SITE_RELIABILITY_WINDOW, siteReliabilityWindow);
+            siteReliabilityMinFailures = config.getInt(DiracConstants.LAB_SITE_RELIABILITY_MIN_FAILURES, siteReliabilityMinFailures);
+            siteReliabilityFailureRatio = config.getInt(DiracConstants.LAB_SITE_RELIABILITY_FAILURE_RATIO, siteReliabilityFailureRatio);
+            siteSelectionEnabled = config.getBoolean(DiracConstants.LAB_SITE_SELECTION_ENABLED, siteSelectionEnabled);
+            siteSelectionSlowdown = config.getInt(DiracConstants.LAB_SITE_SELECTION_SLOWDOWN, siteSelectionSlowdown);
+            siteSelectionMin = config.getInt(DiracConstants.LAB_SITE_SELECTION_MIN, siteSelectionMin);
+            siteSelectionMaxAge = config.getInt(DiracConstants.LAB_SITE_SELECTION_MAX_AGE, siteSelectionMaxAge);
+            jobsInvocationIndex = config.getBoolean(DiracConstants.LAB_JOBS_INVOCATION_INDEX, jobsInvocationIndex);
 
             config.setProperty(DiracConstants.LAB_HOST, host);
             config.setProperty(DiracConstants.LAB_DEFAULT_POOL, defaultPool);
@@ -172,6 +255,41 @@ public class DiracConfiguration {
             config.setProperty(DiracConstants.LAB_CONF_SITE_NAMES, siteNames);
             config.setProperty(DiracConstants.LAB_TAGS, tags);
             config.setProperty(DiracConstants.LAB_CONF_DIRACOSRC_FILEPATH, diracosrcPath);
+            config.setProperty(DiracConstants.LAB_CONF_DIRACOSRC_CACHE_ENABLED, diracosrcCacheEnabled);
+            config.setProperty(DiracConstants.LAB_WORKER_ENABLED, workerEnabled);
+            config.setProperty(DiracConstants.LAB_WORKER_POOL_SIZE, workerPoolSize);
+            config.setProperty(DiracConstants.LAB_WORKER_TIMEOUT, workerTimeout);
+            config.setProperty(DiracConstants.LAB_STATUS_CHUNK_SIZE, statusChunkSize);
+            config.setProperty(DiracConstants.LAB_STATUS_WORKERS, statusWorkers);
+            config.setProperty(DiracConstants.LAB_STATUS_JOBGROUP_ENABLED, statusByJobGroupEnabled);
+            config.setProperty(DiracConstants.LAB_STATUS_FULL_POLLING_CYCLES, statusFullPollingCycles);
+            config.setProperty(DiracConstants.LAB_OUTPUT_WORKERS, outputWorkers);
+            config.setProperty(DiracConstants.LAB_OUTPUT_QUEUE_SIZE, outputQueueSize);
+            config.setProperty(DiracConstants.LAB_OUTPUT_BATCH_SIZE, outputBatchSize);
+            config.setProperty(DiracConstants.LAB_OUTPUT_RETRIES, outputRetries);
+            config.setProperty(DiracConstants.LAB_OUTPUT_RETRY_DELAY, outputRetryDelay);
+            config.setProperty(DiracConstants.LAB_KILL_LINGER, killLinger);
+            config.setProperty(DiracConstants.LAB_SUBMIT_WORKERS, submitWorkers);
+            config.setProperty(DiracConstants.LAB_SUBMIT_BATCH_SIZE, submitBatchSize);
+            config.setProperty(DiracConstants.LAB_SUBMIT_LINGER, submitLinger);
+            config.setProperty(DiracConstants.LAB_SUBMIT_LEASE, submitLease);
+            config.setProperty(DiracConstants.LAB_SUBMIT_RATE_MIN, submitRateMin);
+            config.setProperty(DiracConstants.LAB_SUBMIT_RATE_MAX, submitRateMax);
+            config.setProperty(DiracConstants.LAB_SUBMIT_SLOW, submitSlow);
+            config.setProperty(DiracConstants.LAB_SUBMIT_MAX_ACTIVE, submitMaxActive);
+            config.setProperty(DiracConstants.LAB_SUBMIT_PARAMETRIC, submitParametric);
+            config.setProperty(DiracConstants.LAB_SUBMIT_PIPELINE_WORKERS, submitPipelineWorkers);
+            config.setProperty(DiracConstants.LAB_SUBMIT_PIPELINE_QUEUE_SIZE, submitPipelineQueueSize);
+            config.setProperty(DiracConstants.LAB_FAULTY_SITES_TTL, faultySitesTtl);
+            config.setProperty(DiracConstants.LAB_FAULTY_SITES_MAX, faultySitesMax);
+            config.setProperty(DiracConstants.LAB_SITE_RELIABILITY_WINDOW, siteReliabilityWindow);
+            config.setProperty(DiracConstants.LAB_SITE_RELIABILITY_MIN_FAILURES, siteReliabilityMinFailures);
+            config.setProperty(DiracConstants.LAB_SITE_RELIABILITY_FAILURE_RATIO, siteReliabilityFailureRatio);
+            config.setProperty(DiracConstants.LAB_SITE_SELECTION_ENABLED, siteSelectionEnabled);
+            config.setProperty(DiracConstants.LAB_SITE_SELECTION_SLOWDOWN, siteSelectionSlowdown);
+            config.setProperty(DiracConstants.LAB_SITE_SELECTION_MIN, siteSelectionMin);
+            config.setProperty(DiracConstants.LAB_SITE_SELECTION_MAX_AGE, siteSelectionMaxAge);
+            config.setProperty(DiracConstants.LAB_JOBS_INVOCATION_INDEX, jobsInvocationIndex);
 
             config.save();
 
@@ -240,4 +358,144 @@ public class DiracConfiguration {
         return diracosrcPath;
     }
 
+    public boolean isDiracosrcCacheEnabled() {
+        return diracosrcCacheEnabled;
+    }
+
+    public boolean isWorkerEnabled() {
+        return workerEnabled;
+    }
+
+    public int getWorkerPoolSize() {
+        return workerPoolSize;
+    }
+
+    public int getWorkerTimeout() {
+        return workerTimeout;
+    }
+
+    public int getStatusChunkSize() {
+        return statusChunkSize;
+    }
+
+    public int getStatusWorkers() {
+        return statusWorkers;
+    }
+
+    public boolean isStatusByJobGroupEnabled() {
+        return statusByJobGroupEnabled;
+    }
+
+    public int getStatusFullPollingCycles() {
+        return statusFullPollingCycles;
+    }
+
+    public int getOutputWorkers() {
+        return outputWorkers;
+    }
+
+    public int getOutputQueueSize() {
+        return outputQueueSize;
+    }
+
+    public int getOutputBatchSize() {
+        return outputBatchSize;
+    }
+
+    public int getOutputRetries() {
+        return outputRetries;
+    }
+
+    public int getOutputRetryDelay() {
+        return outputRetryDelay;
+    }
+
+    public int getKillLinger() {
+        return killLinger;
+    }
+
+    public int getSubmitWorkers() {
+        return submitWorkers;
+    }
+
+    public int getSubmitBatchSize() {
+        return submitBatchSize;
+    }
+
+    public int getSubmitLinger() {
+        return submitLinger;
+    }
+
+    public int getSubmitLease() {
+        return submitLease;
+    }
+
+    public int getSubmitRateMin() {
+        return submitRateMin;
+    }
+
+    public int getSubmitRateMax() {
+        return submitRateMax;
+    }
+
+    public int getSubmitSlow() {
+        return submitSlow;
+    }
+
+    public int getSubmitMaxActive() {
+        return submitMaxActive;
+    }
+
+    public boolean isSubmitParametric() {
+        return submitParametric;
+    }
+
+    public int getSubmitPipelineWorkers() {
+        return submitPipelineWorkers;
+    }
+
+    public int getSubmitPipelineQueueSize() {
+        return submitPipelineQueueSize;
+    }
+
+    public int getFaultySitesTtl() {
+        return faultySitesTtl;
+    }
+
+    public int getFaultySitesMax() {
+        return faultySitesMax;
+    }
+
+    public int getSiteReliabilityWindow() {
+        return siteReliabilityWindow;
+    }
+
+    public int getSiteReliabilityMinFailures() {
+        return siteReliabilityMinFailures;
+    }
+
+    public int getSiteReliabilityFailureRatio() {
+        return siteReliabilityFailureRatio;
+    }
+
+    public boolean isSiteSelectionEnabled() {
+        return siteSelectionEnabled;
+    }
+
+    public int getSiteSelectionSlowdown() {
+        return siteSelectionSlowdown;
+    }
+
+    public int getSiteSelectionMin() {
+        return siteSelectionMin;
+    }
+
+    public int getSiteSelectionMaxAge() {
+        return siteSelectionMaxAge;
+    }
+
+    public boolean isJobsInvocationIndex() {
+        return jobsInvocationIndex;
+    }
+
 }
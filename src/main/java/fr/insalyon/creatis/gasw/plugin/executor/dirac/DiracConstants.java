@@ -55,4 +55,39 @@ public class DiracConstants {
     public static final String LAB_CONF_SITE_NAMES = "plugin.dirac.conf.sites";
     public static final String LAB_TAGS = "plugin.dirac.conf.tags";
     public static final String LAB_CONF_DIRACOSRC_FILEPATH = "plugin.dirac.conf.diracosrc.filepath";
+    public static final String LAB_CONF_DIRACOSRC_CACHE_ENABLED = "plugin.dirac.conf.diracosrc.cache.enabled";
+    public static final String LAB_WORKER_ENABLED = "plugin.dirac.worker.enabled";
+    public static final String LAB_WORKER_POOL_SIZE = "plugin.dirac.worker.pool.size";
+    public static final String LAB_WORKER_TIMEOUT = "plugin.dirac.worker.timeout";
+    public static final String LAB_STATUS_CHUNK_SIZE = "plugin.dirac.status.chunk.size";
+    public static final String LAB_STATUS_WORKERS = "plugin.dirac.status.workers";
+    public static final String LAB_STATUS_JOBGROUP_ENABLED = "plugin.dirac.status.jobgroup.enabled";
+    public static final String LAB_STATUS_FULL_POLLING_CYCLES = "plugin.dirac.status.full.polling.cycles";
+    public static final String LAB_OUTPUT_WORKERS = "plugin.dirac.output.workers";
+    public static final String LAB_OUTPUT_QUEUE_SIZE = "plugin.dirac.output.queue.size";
+    public static final String LAB_OUTPUT_BATCH_SIZE = "plugin.dirac.output.batch.size";
+    public static final String LAB_OUTPUT_RETRIES = "plugin.dirac.output.retries";
+    public static final String LAB_OUTPUT_RETRY_DELAY = "plugin.dirac.output.retry.delay";
+    public static final String LAB_KILL_LINGER = "plugin.dirac.kill.linger";
+    public static final String LAB_SUBMIT_WORKERS = "plugin.dirac.submit.workers";
+    public static final String LAB_SUBMIT_BATCH_SIZE = "plugin.dirac.submit.batch.size";
+    public static final String LAB_SUBMIT_LINGER = "plugin.dirac.submit.linger";
+    public static final String LAB_SUBMIT_LEASE = "plugin.dirac.submit.lease";
+    public static final String LAB_SUBMIT_RATE_MIN = "plugin.dirac.submit.rate.min";
+    public static final String LAB_SUBMIT_RATE_MAX = "plugin.dirac.submit.rate.max";
+    public static final String LAB_SUBMIT_SLOW = "plugin.dirac.submit.slow";
+    public static final String LAB_SUBMIT_MAX_ACTIVE = "plugin.dirac.submit.max.active";
+    public static final String LAB_SUBMIT_PARAMETRIC = "plugin.dirac.submit.parametric";
+    public static final String LAB_SUBMIT_PIPELINE_WORKERS = "plugin.dirac.submit.pipeline.workers";
+    public static final String LAB_SUBMIT_PIPELINE_QUEUE_SIZE = "plugin.dirac.submit.pipeline.queue.size";
+    public static final String LAB_FAULTY_SITES_TTL = "plugin.dirac.faulty.sites.ttl";
+    public static final String LAB_FAULTY_SITES_MAX = "plugin.dirac.faulty.sites.max";
+    public static final String LAB_SITE_RELIABILITY_WINDOW = "plugin.dirac.site.reliability.window";
+    public static final String LAB_SITE_RELIABILITY_MIN_FAILURES = "plugin.dirac.site.reliability.min.failures";
+    public static final String LAB_SITE_RELIABILITY_FAILURE_RATIO = "plugin.dirac.site.reliability.failure.ratio";
+    public static final String LAB_SITE_SELECTION_ENABLED = "plugin.dirac.site.selection.enabled";
+    public static final String LAB_SITE_SELECTION_SLOWDOWN = "plugin.dirac.site.selection.slowdown";
+    public static final String LAB_SITE_SELECTION_MIN = "plugin.dirac.site.selection.min";
+    public static final String LAB_SITE_SELECTION_MAX_AGE = "plugin.dirac.site.selection.max.age";
+    public static final String LAB_JOBS_INVOCATION_INDEX = "plugin.dirac.jobs.invocation.index";
 }
@@ -39,8 +39,10 @@ import fr.insalyon.creatis.gasw.plugin.ExecutorPlugin;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracMinorStatusServiceGenerator;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracMonitor;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracOutputRetriever;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracProcessUtils;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracSubmit;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracWorkerPool;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -90,6 +92,8 @@ public class DiracExecutor implements ExecutorPlugin {
         try {
             DiracSubmit.terminate();
             DiracMonitor.terminate();
+            DiracOutputRetriever.terminate();
+            DiracWorkerPool.terminate();
         } catch (InterruptedException e) {
             logger.warn("Hard-kill occured!");
         }
@@ -35,27 +35,87 @@
 package fr.insalyon.creatis.gasw.plugin.executor.dirac.bean;
 
 import jakarta.persistence.*;
+import java.util.Date;
 
 /**
  *
  * @author Rafael Silva
  */
 @Entity
-@NamedQuery(name = "selectAll", query = "FROM JobPool")
-@Table(name = "JobsPool")
+@NamedQueries({
+    @NamedQuery(name = "JobPool.selectUrgent", query = "FROM JobPool j "
+            + "WHERE j.priority > :priority AND (j.leaseExpiry IS NULL OR j.leaseExpiry < :now) "
+            + "AND (j.simulationId IS NULL OR j.simulationId NOT IN (:excluded)) "
+            + "ORDER BY j.priority DESC, j.enqueued"),
+    @NamedQuery(name = "JobPool.selectCommands", query = "SELECT DISTINCT j.command FROM JobPool j "
+            + "WHERE j.priority <= :priority AND (j.leaseExpiry IS NULL OR j.leaseExpiry < :now) "
+            + "AND (j.simulationId IS NULL OR j.simulationId NOT IN (:excluded))"),
+    @NamedQuery(name = "JobPool.selectByCommand", query = "FROM JobPool j "
+            + "WHERE j.priority <= :priority AND j.command = :command "
+            + "AND (j.leaseExpiry IS NULL OR j.leaseExpiry < :now) "
+            + "AND (j.simulationId IS NULL OR j.simulationId NOT IN (:excluded)) "
+            + "ORDER BY j.enqueued, j.fileName"),
+    @NamedQuery(name = "JobPool.lease", query = "UPDATE JobPool j "
+            + "SET j.leaseOwner = :owner, j.leaseExpiry = :expiry, j.version = j.version + 1 "
+            + "WHERE j.fileName = :fileName AND j.version = :version"),
+    @NamedQuery(name = "JobPool.release", query = "UPDATE JobPool j "
+            + "SET j.leaseOwner = NULL, j.leaseExpiry = NULL, j.version = j.version + 1 "
+            + "WHERE j.leaseOwner = :owner AND j.fileName IN (:fileNames)"),
+    @NamedQuery(name = "JobPool.extend", query = "UPDATE JobPool j "
+            + "SET j.leaseExpiry = :expiry, j.version = j.version + 1 "
+            + "WHERE j.leaseOwner = :owner AND j.fileName IN (:fileNames)"),
+    @NamedQuery(name = "JobPool.selectLeased", query = "SELECT j.fileName FROM JobPool j "
+            + "WHERE j.leaseOwner = :owner AND j.fileName IN (:fileNames)")
+})
+@Table(name = "JobsPool", indexes = {
+    @Index(name = "idx_jobspool_priority_enqueued", columnList = "priority, enqueued"),
+    @Index(name = "idx_jobspool_command_enqueued", columnList = "command, enqueued"),
+    @Index(name = "idx_jobspool_lease_expiry", columnList = "lease_expiry")
+})
 public class JobPool {
 
+    // first attempts of an invocation
+    public static final int PRIORITY_DEFAULT = 0;
+    // resubmissions, replicas and resumed jobs, submitted before first attempts
+    public static final int PRIORITY_RETRY = 10;
+
     private String fileName;
     private String command;
     private String params;
+    private int priority;
+    private Integer invocationId;
+    private String simulationId;
+    private Date enqueued;
+    private String leaseOwner;
+    private Date leaseExpiry;
+    private int version;
 
     public JobPool() {
     }
 
     public JobPool(String fileName, String command, String params) {
+        this(fileName, command, params, PRIORITY_DEFAULT);
+    }
+
+    public JobPool(String fileName, String command, String params, int priority) {
+        this(fileName, command, params, priority, null, null);
+    }
+
+    /**
+     * @param invocationId invocation of the job submitted again, null for a
+     * first attempt
+     * @param simulationId simulation of the job, whose active jobs may be
+     * capped
+     */
+    public JobPool(String fileName, String command, String params, int priority, Integer invocationId,
+            String simulationId) {
         this.fileName = fileName;
         this.command = command;
         this.params = params;
+        this.priority = priority;
+        this.invocationId = invocationId;
+        this.simulationId = simulationId;
+        this.enqueued = new Date();
     }
 
     @Column(name = "command")
@@ -85,4 +145,70 @@ public class JobPool {
     public void setParams(String params) {
         this.params = params;
     }
+
+    @Column(name = "priority", columnDefinition = "INT NOT NULL DEFAULT 0")
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    @Column(name = "invocation_id")
+    public Integer getInvocationId() {
+        return invocationId;
+    }
+
+    public void setInvocationId(Integer invocationId) {
+        this.invocationId = invocationId;
+    }
+
+    @Column(name = "simulation_id")
+    public String getSimulationId() {
+        return simulationId;
+    }
+
+    public void setSimulationId(String simulationId) {
+        this.simulationId = simulationId;
+    }
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "enqueued")
+    public Date getEnqueued() {
+        return enqueued;
+    }
+
+    public void setEnqueued(Date enqueued) {
+        this.enqueued = enqueued;
+    }
+
+    @Column(name = "lease_owner")
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "lease_expiry")
+    public Date getLeaseExpiry() {
+        return leaseExpiry;
+    }
+
+    public void setLeaseExpiry(Date leaseExpiry) {
+        this.leaseExpiry = leaseExpiry;
+    }
+
+    @Version
+    @Column(name = "version", columnDefinition = "INT NOT NULL DEFAULT 0")
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
 }
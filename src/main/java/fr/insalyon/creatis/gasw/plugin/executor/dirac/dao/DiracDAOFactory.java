@@ -37,7 +37,10 @@ package fr.insalyon.creatis.gasw.plugin.executor.dirac.dao;
 import fr.insalyon.creatis.gasw.GaswConfiguration;
 import fr.insalyon.creatis.gasw.GaswException;
 import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.hibernate.DiracJobData;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.hibernate.JobPoolData;
+import org.apache.log4j.Logger;
 import org.hibernate.SessionFactory;
 
 /**
@@ -46,6 +49,7 @@ import org.hibernate.SessionFactory;
  */
 public class DiracDAOFactory {
 
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
     private static DiracDAOFactory instance;
     private SessionFactory sessionFactory;
 
@@ -65,9 +69,39 @@ public class DiracDAOFactory {
         } catch (GaswException ex) {
             throw new DAOException(ex);
         }
+        upgradeSchema();
+    }
+
+    /**
+     * Indexes the GASW jobs on their invocation ID, if enabled, and migrates
+     * the job pool entries added by a previous version. Failures are only
+     * logged: the plugin works without them, only slower, and the
+     * replicating jobs of the unmigrated entries keep their flag.
+     */
+    private void upgradeSchema() {
+
+        try {
+            if (DiracConfiguration.getInstance().isJobsInvocationIndex()) {
+                getDiracJobDAO().createInvocationIndex();
+            }
+        } catch (GaswException | DAOException ex) {
+            logger.warn("[DIRAC] unable to index the jobs on their invocation ID", ex);
+        }
+        try {
+            int migrated = getJobPoolDAO().migrateLegacyEntries();
+            if (migrated > 0) {
+                logger.info("[DIRAC] migrated " + migrated + " job pool entries of a previous version");
+            }
+        } catch (DAOException ex) {
+            logger.warn("[DIRAC] unable to migrate the job pool entries of a previous version", ex);
+        }
     }
     
     public JobPoolDAO getJobPoolDAO() {
         return new JobPoolData(sessionFactory);
     }
+
+    public DiracJobDAO getDiracJobDAO() {
+        return new DiracJobData(sessionFactory);
+    }
 }
@@ -0,0 +1,50 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.dao;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk operations on GASW jobs needed by the DIRAC plugin, which the GASW
+ * JobDAO only offers one job at a time.
+ */
+public interface DiracJobDAO {
+
+    /**
+     * Updates all the jobs in a single JDBC-batched transaction.
+     */
+    public void updateAll(Collection<Job> jobs) throws DAOException;
+
+    /**
+     * Gets the jobs flagged as replicating among the jobs of the given
+     * invocations, in a single query on the invocation ID.
+     */
+    public List<Job> getReplicatingByInvocationIDs(Collection<Integer> invocationIDs) throws DAOException;
+
+    /**
+     * Gets, among the given invocations, the ones with a completed job, in
+     * a single query on the invocation ID.
+     */
+    public Set<Integer> getCompletedInvocationIDs(Collection<Integer> invocationIDs) throws DAOException;
+
+    /**
+     * Counts the jobs still in DIRAC (submitted, queued, running or being
+     * killed, replicated or rescheduled), grouped by simulation.
+     *
+     * @return the number of active jobs by simulation ID
+     */
+    public Map<String, Long> countActiveJobsBySimulation() throws DAOException;
+
+    /**
+     * Indexes the invocation ID column of the GASW jobs table, which the
+     * replicating jobs are looked up on, unless an index already starts
+     * with it. Run at startup with plugin.dirac.jobs.invocation.index only,
+     * as the table belongs to GASW; otherwise the index can be created by
+     * hand as idx_jobs_invocation_id, on the invocation ID column of the
+     * Jobs table.
+     */
+    public void createInvocationIndex() throws DAOException;
+}
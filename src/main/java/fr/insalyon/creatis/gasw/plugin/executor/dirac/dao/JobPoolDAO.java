@@ -36,6 +36,7 @@ package fr.insalyon.creatis.gasw.plugin.executor.dirac.dao;
 
 import fr.insalyon.creatis.gasw.dao.DAOException;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -48,5 +49,74 @@ public interface JobPoolDAO {
 
     public void remove(JobPool jobPool) throws DAOException;
 
-    public List<JobPool> get() throws DAOException;
+    /**
+     * Adds all the entries in a single JDBC-batched transaction.
+     */
+    public void addAll(Collection<JobPool> jobPools) throws DAOException;
+
+    /**
+     * Removes the entries with the given file names leased by the owner, in
+     * a single transaction. The entries whose lease was lost are left to the
+     * consumer holding them.
+     */
+    public void removeAll(String owner, Collection<String> fileNames) throws DAOException;
+
+    /**
+     * Gets the next entries to submit, up to max. Entries with a raised
+     * priority come first, by priority then enqueue time. The other ones
+     * are taken in turn from each command, oldest first, so that a large
+     * backlog of one application does not hold the others back. Entries
+     * under a lease are left out.
+     */
+    public List<JobPool> getNext(int max) throws DAOException;
+
+    /**
+     * Leases the next entries to submit, in the order of getNext(). A leased
+     * entry is left out by the other consumers until it is removed,
+     * released or its lease expires, so several plugin instances can share
+     * the pool.
+     *
+     * @param owner identifies the consumer holding the lease
+     * @param leaseMillis duration of the lease
+     * @param excludedSimulations simulations whose entries are left in the
+     * pool
+     */
+    public List<JobPool> claim(String owner, int max, long leaseMillis,
+            Collection<String> excludedSimulations) throws DAOException;
+
+    /**
+     * Releases the leases held by the owner on the given entries, so they
+     * can be claimed again right away.
+     */
+    public void release(String owner, Collection<String> fileNames) throws DAOException;
+
+    /**
+     * Extends the leases held by the owner on the given entries, before a
+     * long operation on them.
+     *
+     * @param leaseMillis duration of the lease from now
+     * @return the file names of the entries still leased by the owner, the
+     * other ones may have been claimed by another consumer once their lease
+     * expired
+     */
+    public List<String> renew(String owner, Collection<String> fileNames, long leaseMillis) throws DAOException;
+
+    /**
+     * Keeps the leases held by the owner on the given entries until they are
+     * removed or released by hand. For the entries that may have been
+     * submitted without their DIRAC job ID being known: claiming them again
+     * would submit them twice.
+     */
+    public void hold(String owner, Collection<String> fileNames) throws DAOException;
+
+    /**
+     * Gives the entries added before the invocation ID and enqueue time
+     * columns existed the invocation ID of the replicating job with the same
+     * parameters, if any, so that its replicating flag is cleared once the
+     * entry is submitted. Each entry is migrated once, as it then gets an
+     * enqueue time.
+     *
+     * @return the number of migrated entries
+     */
+    public int migrateLegacyEntries() throws DAOException;
 }
@@ -0,0 +1,55 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.dao;
+
+/**
+ * Signals the jobs added to the job pool, so the submit loop can wake up as
+ * soon as they are committed instead of waiting for its next sweep. The end
+ * of active jobs is signaled as well, for the simulations whose entries
+ * wait for their active jobs to drop below the cap. The signal is
+ * versioned: a waiter passes the last version it has seen, so an addition
+ * made while it was busy is not missed.
+ */
+public class JobPoolSignal {
+
+    private static final JobPoolSignal instance = new JobPoolSignal();
+
+    private long version;
+
+    public static JobPoolSignal getInstance() {
+        return instance;
+    }
+
+    /**
+     * Called once the job pool entry is committed.
+     */
+    public synchronized void added() {
+        version++;
+        notifyAll();
+    }
+
+    /**
+     * Called once the end of active jobs is committed.
+     */
+    public synchronized void finished() {
+        version++;
+        notifyAll();
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Waits until a job is added after the given version, or the timeout.
+     *
+     * @return the current version
+     */
+    public synchronized long await(long seenVersion, long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (version == seenVersion && remaining > 0) {
+            wait(remaining);
+            remaining = end - System.currentTimeMillis();
+        }
+        return version;
+    }
+}
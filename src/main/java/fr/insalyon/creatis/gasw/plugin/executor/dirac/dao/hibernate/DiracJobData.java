@@ -0,0 +1,195 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.hibernate;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.DiracJobDAO;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.log4j.Logger;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+
+public class DiracJobData implements DiracJobDAO {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static final int BATCH_SIZE = 50;
+    private static final int SELECT_CHUNK_SIZE = 1000;
+    private static final String INVOCATION_INDEX = "idx_jobs_invocation_id";
+    private static final List<GaswStatus> ACTIVE_STATUSES = List.of(
+            GaswStatus.SUCCESSFULLY_SUBMITTED, GaswStatus.QUEUED, GaswStatus.RUNNING,
+            GaswStatus.KILL, GaswStatus.KILL_REPLICA, GaswStatus.REPLICATE, GaswStatus.RESCHEDULE);
+    private SessionFactory sessionFactory;
+
+    public DiracJobData(SessionFactory sessionFactory) {
+
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public void updateAll(Collection<Job> jobs) throws DAOException {
+
+        if (jobs.isEmpty()) {
+            return;
+        }
+        Session session = sessionFactory.openSession();
+        try {
+            session.setJdbcBatchSize(BATCH_SIZE);
+            session.beginTransaction();
+            for (Job job : jobs) {
+                session.update(job);
+            }
+            session.getTransaction().commit();
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public List<Job> getReplicatingByInvocationIDs(Collection<Integer> invocationIDs) throws DAOException {
+
+        List<Job> jobs = new ArrayList<>();
+        if (invocationIDs.isEmpty()) {
+            return jobs;
+        }
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            List<Integer> ids = new ArrayList<>(invocationIDs);
+            // bounded IN lists
+            for (int i = 0; i < ids.size(); i += SELECT_CHUNK_SIZE) {
+                jobs.addAll(session.createQuery("FROM Job j WHERE j.replicating = true "
+                        + "AND j.invocationID IN (:invocationIDs)", Job.class)
+                        .setParameterList("invocationIDs", ids.subList(i, Math.min(i + SELECT_CHUNK_SIZE, ids.size())))
+                        .list());
+            }
+            session.getTransaction().commit();
+
+            return jobs;
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public Set<Integer> getCompletedInvocationIDs(Collection<Integer> invocationIDs) throws DAOException {
+
+        Set<Integer> completed = new HashSet<>();
+        if (invocationIDs.isEmpty()) {
+            return completed;
+        }
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            List<Integer> ids = new ArrayList<>(invocationIDs);
+            // bounded IN lists
+            for (int i = 0; i < ids.size(); i += SELECT_CHUNK_SIZE) {
+                completed.addAll(session.createQuery("SELECT DISTINCT j.invocationID FROM Job j "
+                        + "WHERE j.status = :status AND j.invocationID IN (:invocationIDs)", Integer.class)
+                        .setParameter("status", GaswStatus.COMPLETED)
+                        .setParameterList("invocationIDs", ids.subList(i, Math.min(i + SELECT_CHUNK_SIZE, ids.size())))
+                        .list());
+            }
+            session.getTransaction().commit();
+
+            return completed;
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public Map<String, Long> countActiveJobsBySimulation() throws DAOException {
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            Map<String, Long> counts = new HashMap<>();
+            for (Object[] row : session.createQuery("SELECT j.simulationID, COUNT(j) FROM Job j "
+                    + "WHERE j.status IN (:statuses) GROUP BY j.simulationID", Object[].class)
+                    .setParameterList("statuses", ACTIVE_STATUSES)
+                    .list()) {
+                counts.put((String) row[0], (Long) row[1]);
+            }
+            session.getTransaction().commit();
+
+            return counts;
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void createInvocationIndex() throws DAOException {
+
+        // the GASW mapping names the table and the column
+        AbstractEntityPersister persister = (AbstractEntityPersister) sessionFactory
+                .unwrap(SessionFactoryImplementor.class).getMappingMetamodel().getEntityDescriptor(Job.class);
+        String table = persister.getTableName();
+        String column = persister.getPropertyColumnNames("invocationID")[0];
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.doWork(connection -> {
+                DatabaseMetaData metaData = connection.getMetaData();
+                try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+                    while (indexes.next()) {
+                        if (indexes.getShort("ORDINAL_POSITION") == 1
+                                && column.equalsIgnoreCase(indexes.getString("COLUMN_NAME"))) {
+                            return;
+                        }
+                    }
+                }
+                logger.info("[DIRAC] creating index " + INVOCATION_INDEX + " on " + table + "." + column);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE INDEX " + INVOCATION_INDEX + " ON " + table + " (" + column + ")");
+                }
+            });
+
+        } catch (HibernateException ex) {
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+}
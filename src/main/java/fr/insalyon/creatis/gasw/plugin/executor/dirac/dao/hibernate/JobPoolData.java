@@ -37,11 +37,26 @@ package fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.hibernate;
 import fr.insalyon.creatis.gasw.dao.DAOException;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.JobPoolDAO;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.JobPoolSignal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.apache.log4j.Logger;
 import org.hibernate.HibernateException;
+import org.hibernate.LockMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.MutationQuery;
+import org.hibernate.query.Query;
 
 /**
  *
@@ -50,11 +65,25 @@ import org.hibernate.SessionFactory;
 public class JobPoolData implements JobPoolDAO {
 
     private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static final int BATCH_SIZE = 50;
+    private static final int DELETE_CHUNK_SIZE = 1000;
+    // lease of the held entries, left to a manual check
+    private static final Date HELD_EXPIRY = Date.from(Instant.parse("9999-01-01T00:00:00Z"));
     private SessionFactory sessionFactory;
+    // claims with SELECT ... FOR UPDATE SKIP LOCKED, or else with an
+    // optimistic update on the entry version
+    private final boolean skipLocked;
 
     public JobPoolData(SessionFactory sessionFactory) {
 
+        this(sessionFactory, sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect().supportsSkipLocked());
+    }
+
+    JobPoolData(SessionFactory sessionFactory, boolean skipLocked) {
+
         this.sessionFactory = sessionFactory;
+        this.skipLocked = skipLocked;
     }
 
     @Override
@@ -66,6 +95,7 @@ public class JobPoolData implements JobPoolDAO {
             session.save(jobPool);
             session.getTransaction().commit();
             session.close();
+            JobPoolSignal.getInstance().added();
 
         } catch (HibernateException ex) {
             logger.error(ex);
@@ -90,15 +120,73 @@ public class JobPoolData implements JobPoolDAO {
     }
 
     @Override
-    public List<JobPool> get() throws DAOException {
+    public void addAll(Collection<JobPool> jobPools) throws DAOException {
+
+        if (jobPools.isEmpty()) {
+            return;
+        }
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            session.setJdbcBatchSize(BATCH_SIZE);
+            session.beginTransaction();
+            for (JobPool jobPool : jobPools) {
+                session.insert(jobPool);
+            }
+            session.getTransaction().commit();
+            JobPoolSignal.getInstance().added();
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void removeAll(String owner, Collection<String> fileNames) throws DAOException {
+
+        if (fileNames.isEmpty()) {
+            return;
+        }
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            session.beginTransaction();
+            List<String> names = new ArrayList<>(fileNames);
+            // bounded IN lists
+            for (int i = 0; i < names.size(); i += DELETE_CHUNK_SIZE) {
+                session.createMutationQuery("DELETE FROM JobPool j "
+                        + "WHERE j.leaseOwner = :owner AND j.fileName IN (:fileNames)")
+                        .setParameter("owner", owner)
+                        .setParameterList("fileNames", names.subList(i, Math.min(i + DELETE_CHUNK_SIZE, names.size())))
+                        .executeUpdate();
+            }
+            session.getTransaction().commit();
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public List<JobPool> getNext(int max) throws DAOException {
 
         try {
             Session session = sessionFactory.openSession();
             session.beginTransaction();
-            List<JobPool> list = (List<JobPool>) session.getNamedQuery("selectAll").list();
+            List<JobPool> list = select(session, max, new Date(), List.of(), LockMode.NONE);
             session.getTransaction().commit();
             session.close();
-            
+
             return list;
 
         } catch (HibernateException ex) {
@@ -106,4 +194,247 @@ public class JobPoolData implements JobPoolDAO {
             throw new DAOException(ex);
         }
     }
+
+    @Override
+    public List<JobPool> claim(String owner, int max, long leaseMillis,
+            Collection<String> excludedSimulations) throws DAOException {
+
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            Date now = new Date();
+            Date expiry = new Date(now.getTime() + leaseMillis);
+            List<JobPool> claimed = new ArrayList<>();
+
+            if (skipLocked) {
+                // rows locked by another consumer are skipped, the lease is
+                // written on the managed entities at commit
+                for (JobPool jobPool : select(session, max, now, excludedSimulations, LockMode.UPGRADE_SKIPLOCKED)) {
+                    jobPool.setLeaseOwner(owner);
+                    jobPool.setLeaseExpiry(expiry);
+                    claimed.add(jobPool);
+                }
+            } else {
+                // an entry is ours only if nobody leased it since it was read
+                for (JobPool jobPool : select(session, max, now, excludedSimulations, LockMode.NONE)) {
+                    int updated = session.createNamedMutationQuery("JobPool.lease")
+                            .setParameter("owner", owner)
+                            .setParameter("expiry", expiry)
+                            .setParameter("fileName", jobPool.getFileName())
+                            .setParameter("version", jobPool.getVersion())
+                            .executeUpdate();
+                    if (updated == 1) {
+                        session.detach(jobPool);
+                        jobPool.setLeaseOwner(owner);
+                        jobPool.setLeaseExpiry(expiry);
+                        jobPool.setVersion(jobPool.getVersion() + 1);
+                        claimed.add(jobPool);
+                    }
+                }
+            }
+            session.getTransaction().commit();
+
+            return claimed;
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void release(String owner, Collection<String> fileNames) throws DAOException {
+
+        updateLeases("JobPool.release", owner, fileNames, null);
+    }
+
+    @Override
+    public List<String> renew(String owner, Collection<String> fileNames, long leaseMillis) throws DAOException {
+
+        int renewed = updateLeases("JobPool.extend", owner, fileNames,
+                new Date(System.currentTimeMillis() + leaseMillis));
+        if (renewed == fileNames.size()) {
+            return new ArrayList<>(fileNames);
+        }
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            session.beginTransaction();
+            List<String> names = new ArrayList<>(fileNames);
+            List<String> leased = new ArrayList<>();
+            for (int i = 0; i < names.size(); i += DELETE_CHUNK_SIZE) {
+                leased.addAll(session.createNamedQuery("JobPool.selectLeased", String.class)
+                        .setParameter("owner", owner)
+                        .setParameterList("fileNames", names.subList(i, Math.min(i + DELETE_CHUNK_SIZE, names.size())))
+                        .list());
+            }
+            session.getTransaction().commit();
+
+            return leased;
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void hold(String owner, Collection<String> fileNames) throws DAOException {
+
+        updateLeases("JobPool.extend", owner, fileNames, HELD_EXPIRY);
+    }
+
+    @Override
+    public int migrateLegacyEntries() throws DAOException {
+
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            session.beginTransaction();
+            int migrated = session.createMutationQuery("UPDATE JobPool p SET p.invocationId = "
+                    + "(SELECT MAX(j.invocationID) FROM Job j WHERE j.replicating = true AND j.parameters = p.params), "
+                    + "p.enqueued = :now WHERE p.enqueued IS NULL")
+                    .setParameter("now", new Date())
+                    .executeUpdate();
+            session.getTransaction().commit();
+
+            return migrated;
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * @param expiry the new lease expiry, null for the queries without one
+     * @return the number of updated entries
+     */
+    private int updateLeases(String queryName, String owner, Collection<String> fileNames, Date expiry)
+            throws DAOException {
+
+        if (fileNames.isEmpty()) {
+            return 0;
+        }
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            session.beginTransaction();
+            List<String> names = new ArrayList<>(fileNames);
+            int updated = 0;
+            for (int i = 0; i < names.size(); i += DELETE_CHUNK_SIZE) {
+                MutationQuery query = session.createNamedMutationQuery(queryName)
+                        .setParameter("owner", owner)
+                        .setParameterList("fileNames", names.subList(i, Math.min(i + DELETE_CHUNK_SIZE, names.size())));
+                if (expiry != null) {
+                    query.setParameter("expiry", expiry);
+                }
+                updated += query.executeUpdate();
+            }
+            session.getTransaction().commit();
+
+            return updated;
+
+        } catch (HibernateException ex) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            logger.error(ex);
+            throw new DAOException(ex);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Selects the next unleased entries of the simulations not excluded:
+     * urgent ones first, then in turn from each command. Each command is
+     * first asked for its share of the page only, the share of the commands
+     * running short being spread over the others in the next rounds, so no
+     * more rows than needed are loaded, or locked.
+     */
+    private List<JobPool> select(Session session, int max, Date now, Collection<String> excludedSimulations,
+            LockMode lockMode) {
+
+        // NOT IN needs a non-empty list, no simulation has an empty ID
+        Collection<String> excluded = excludedSimulations.isEmpty() ? List.of("") : excludedSimulations;
+
+        List<JobPool> list = new ArrayList<>(lock(session.createNamedQuery("JobPool.selectUrgent", JobPool.class), lockMode)
+                .setParameter("priority", JobPool.PRIORITY_DEFAULT)
+                .setParameter("now", now)
+                .setParameterList("excluded", excluded)
+                .setMaxResults(max)
+                .list());
+
+        int remaining = max - list.size();
+        if (remaining > 0) {
+            Map<String, List<JobPool>> byCommand = new LinkedHashMap<>();
+            for (String command : session.createNamedQuery("JobPool.selectCommands", String.class)
+                    .setParameter("priority", JobPool.PRIORITY_DEFAULT)
+                    .setParameter("now", now)
+                    .setParameterList("excluded", excluded)
+                    .list()) {
+                byCommand.put(command, new ArrayList<>());
+            }
+            Set<String> selected = new HashSet<>();
+            List<String> commands = new ArrayList<>(byCommand.keySet());
+            while (remaining > 0 && !commands.isEmpty()) {
+                int share = (remaining + commands.size() - 1) / commands.size();
+                for (Iterator<String> it = commands.iterator(); it.hasNext() && remaining > 0;) {
+                    String command = it.next();
+                    List<JobPool> entries = byCommand.get(command);
+                    int limit = Math.min(share, remaining);
+                    List<JobPool> page = lock(session.createNamedQuery("JobPool.selectByCommand", JobPool.class), lockMode)
+                            .setParameter("priority", JobPool.PRIORITY_DEFAULT)
+                            .setParameter("command", command)
+                            .setParameter("now", now)
+                            .setParameterList("excluded", excluded)
+                            .setFirstResult(entries.size())
+                            .setMaxResults(limit)
+                            .list();
+                    for (JobPool jobPool : page) {
+                        // the offset may shift if other consumers lease entries meanwhile
+                        if (selected.add(jobPool.getFileName())) {
+                            entries.add(jobPool);
+                            remaining--;
+                        }
+                    }
+                    if (page.size() < limit) {
+                        it.remove();
+                    }
+                }
+            }
+            // round-robin across commands
+            List<Iterator<JobPool>> iterators = new ArrayList<>();
+            byCommand.values().forEach(entries -> iterators.add(entries.iterator()));
+            while (!iterators.isEmpty()) {
+                for (Iterator<Iterator<JobPool>> it = iterators.iterator(); it.hasNext();) {
+                    Iterator<JobPool> entries = it.next();
+                    if (entries.hasNext()) {
+                        list.add(entries.next());
+                    } else {
+                        it.remove();
+                    }
+                }
+            }
+        }
+        return list;
+    }
+
+    private static Query<JobPool> lock(Query<JobPool> query, LockMode lockMode) {
+
+        return lockMode == LockMode.NONE ? query : query.setHibernateLockMode(lockMode);
+    }
 }
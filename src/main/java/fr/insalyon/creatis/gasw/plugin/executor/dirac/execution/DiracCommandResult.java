@@ -0,0 +1,30 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import java.util.List;
+
+/**
+ * Exit value and output lines of a dirac-* command, whether it was run as a
+ * separate process or by a DIRAC worker.
+ */
+public class DiracCommandResult {
+
+    private final int exitValue;
+    private final List<String> output;
+
+    public DiracCommandResult(int exitValue, List<String> output) {
+        this.exitValue = exitValue;
+        this.output = output;
+    }
+
+    public int getExitValue() {
+        return exitValue;
+    }
+
+    public List<String> getOutput() {
+        return output;
+    }
+
+    public String getOutputAsString() {
+        return String.join("\n", output);
+    }
+}
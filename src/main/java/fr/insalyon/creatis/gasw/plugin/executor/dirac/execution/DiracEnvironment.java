@@ -0,0 +1,139 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.log4j.Logger;
+
+/**
+ * Environment obtained by sourcing the diracosrc file. It is captured once
+ * with {@code env -0} and captured again only when the rc file modification
+ * time changes, so dirac-* commands can be launched directly instead of
+ * going through a new bash sourcing the rc file on every call.
+ */
+public class DiracEnvironment {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static DiracEnvironment instance;
+
+    private final File rcFile;
+    private final Map<String, String> executables = new ConcurrentHashMap<>();
+    private Map<String, String> environment;
+    private long capturedModified;
+
+    public synchronized static DiracEnvironment getInstance(String rcPath) {
+        if (instance == null || !instance.rcFile.getPath().equals(rcPath)) {
+            instance = new DiracEnvironment(rcPath);
+        }
+        return instance;
+    }
+
+    public DiracEnvironment(String rcPath) {
+        this.rcFile = new File(rcPath);
+    }
+
+    /**
+     * @return the environment of the sourced rc file, captured again if the
+     * file changed since the last capture
+     */
+    public synchronized Map<String, String> getEnvironment() throws IOException {
+        long modified = rcFile.lastModified();
+        if (environment == null || modified != capturedModified) {
+            if (modified == 0) {
+                throw new IOException("Cannot read DIRAC rc file " + rcFile);
+            }
+            environment = capture();
+            capturedModified = modified;
+            executables.clear();
+            logger.info("[DIRAC] captured environment of " + rcFile);
+        }
+        return environment;
+    }
+
+    /**
+     * Builds a process running the command directly with the DIRAC
+     * environment. Its error stream is merged with its output.
+     *
+     * A command missing from the PATH is run through bash instead, which
+     * exits with code 127 like when sourcing the rc file, rather than
+     * failing to start.
+     */
+    public ProcessBuilder processBuilder(List<String> command) throws IOException {
+        Map<String, String> env = getEnvironment();
+        String executable = resolve(command.get(0), env);
+        List<String> resolved = new ArrayList<>();
+        if (executable.contains(File.separator)) {
+            resolved.add(executable);
+            resolved.addAll(command.subList(1, command.size()));
+        } else {
+            resolved.addAll(List.of("bash", "-c", "exec \"$@\"", "bash"));
+            resolved.addAll(command);
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(resolved);
+        builder.environment().clear();
+        builder.environment().putAll(env);
+        builder.redirectErrorStream(true);
+        return builder;
+    }
+
+    public Process start(String... command) throws IOException {
+        return processBuilder(List.of(command)).start();
+    }
+
+    /**
+     * ProcessBuilder looks executables up in the PATH of the JVM, not in the
+     * one of the child environment, so the lookup is done here.
+     */
+    private String resolve(String executable, Map<String, String> env) {
+        if (executable.contains(File.separator)) {
+            return executable;
+        }
+        return executables.computeIfAbsent(executable, e -> {
+            String path = env.getOrDefault("PATH", "");
+            for (String dir : path.split(File.pathSeparator)) {
+                File candidate = new File(dir, e);
+                if (candidate.isFile() && candidate.canExecute()) {
+                    return candidate.getAbsolutePath();
+                }
+            }
+            return e;
+        });
+    }
+
+    private Map<String, String> capture() throws IOException {
+        Process process = new ProcessBuilder("bash", "-c",
+                "source \"$1\" > /dev/null 2>&1 && env -0", "bash", rcFile.getPath())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        byte[] output;
+        try (InputStream in = process.getInputStream()) {
+            output = in.readAllBytes();
+            if (process.waitFor() != 0) {
+                throw new IOException("Failed to source DIRAC rc file " + rcFile
+                        + " (exit code " + process.exitValue() + ")");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } finally {
+            process.getOutputStream().close();
+        }
+
+        Map<String, String> env = new HashMap<>();
+        for (String entry : new String(output, StandardCharsets.UTF_8).split("\0")) {
+            int index = entry.indexOf('=');
+            if (index > 0) {
+                env.put(entry.substring(0, index), entry.substring(index + 1));
+            }
+        }
+        return Collections.unmodifiableMap(env);
+    }
+}
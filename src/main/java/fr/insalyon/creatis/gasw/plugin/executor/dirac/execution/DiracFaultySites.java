@@ -1,84 +1,109 @@
 package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
 
 import org.apache.log4j.Logger;
-import java.time.Duration;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
+/**
+ * Sites failing for a command. A site is banned while it is unreliable,
+ * from the decayed outcomes of the command on the site or from the ones of
+ * all the commands: a site failing for every command is banned for the
+ * commands that have not tried it yet. A success does not lift a ban by
+ * itself, it only weighs against the failures.
+ *
+ * Reported by the monitor and the output parsers, read by the submitters.
+ * The banned sites list is rebuilt only when the unreliable sites change.
+ */
 public class DiracFaultySites {
 
     private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
-    private Map<String, DiracFaultySite> faultySites;
 
-    public DiracFaultySites() {
-        this.faultySites = new HashMap<>();
+    private final DiracSiteReliability commandReliability;
+    private final DiracSiteReliability globalReliability;
+    private volatile long lastAccess;
+    private volatile BannedSites bannedSites = new BannedSites(List.of(), List.of(), List.of());
+
+    DiracFaultySites(long now, DiracSiteReliability commandReliability, DiracSiteReliability globalReliability) {
+        this.commandReliability = commandReliability;
+        this.globalReliability = globalReliability;
+        this.lastAccess = now;
     }
 
-    public void reportErrorOnSite (String siteName) {
-        logger.info("[DiracFaultySites] Report error on site " + siteName);
-        if (this.faultySites.containsKey(siteName)) {
-            this.faultySites.get(siteName).addError();
-        } else {
-            this.faultySites.put(siteName, new DiracFaultySite(siteName));
+    public void reportErrorOnSite(String siteName) {
+        // jobs ending before they ran, or on an ignored site, have no site
+        if (siteName == null) {
+            return;
         }
+        logger.info("[DiracFaultySites] Report error on site " + siteName);
+        commandReliability.reportFailure(siteName);
+        globalReliability.reportFailure(siteName);
     }
 
     public void reportSuccessOnSite(String siteName) {
-        logger.info("[DiracFaultySites] Report success on site " + siteName +". Removing it from the list.");
-        if (this.faultySites.containsKey(siteName)) {
-            this.faultySites.remove(siteName);
+        if (siteName == null) {
+            return;
         }
+        commandReliability.reportSuccess(siteName);
+        globalReliability.reportSuccess(siteName);
     }
 
-    public List<String> getBannedSitesList (){
-        List<String> list = new ArrayList<>();
-        for (DiracFaultySite faultySite : this.faultySites.values()) {
-            if (faultySite.toBeBanned()) {
-                list.add(faultySite.getSiteName());
-            }
+    public boolean isBanned(String siteName) {
+        if (siteName == null) {
+            return false;
         }
-        return list;
+        return commandReliability.isUnreliable(siteName) || globalReliability.isUnreliable(siteName);
     }
 
-    class DiracFaultySite {
-        private String siteName;
-        private LocalDateTime timestamp;
-        private int nbErrors;
-
-        public DiracFaultySite(String siteName) {
-            this.timestamp = LocalDateTime.now();
-            this.siteName = siteName;
-            this.nbErrors = 1;
+    /**
+     * @return the banned sites, a list shared by the callers
+     */
+    public List<String> getBannedSitesList() {
+        List<String> commandSites = commandReliability.getUnreliableSites();
+        List<String> globalSites = globalReliability.getUnreliableSites();
+        BannedSites current = bannedSites;
+        if (current.commandSites != commandSites || current.globalSites != globalSites) {
+            Set<String> sites = new LinkedHashSet<>(commandSites);
+            sites.addAll(globalSites);
+            current = new BannedSites(commandSites, globalSites, List.copyOf(sites));
+            bannedSites = current;
         }
+        return current.sites;
+    }
 
-        public String getSiteName() {
-            return this.siteName;
-        }
+    double getFailures(String siteName) {
+        return commandReliability.getFailures(siteName);
+    }
 
-        public boolean toBeBanned() {
-            LocalDateTime currentTime = LocalDateTime.now();
-            Duration duration = Duration.between(currentTime, this.timestamp);
-            long diff = Math.abs(duration.toMinutes());
-            //exponential back-off
-            if (diff < Math.pow(2, (this.nbErrors - 1))) {
-                logger.info("[DiracFaultySite] site " + siteName + " is banned since last failure was "+
-                        diff + " min ago, and the number of errors is " +this.nbErrors);
-                return true;
-            } else {
-                logger.info("[DiracFaultySite] site " + siteName + " is NOT to be banned since last failure was "+
-                        diff + " min ago, and the number of errors is " +this.nbErrors);
-                return false;
-            }
-        }
+    int size() {
+        return commandReliability.size();
+    }
 
-        public void addError() {
-            this.timestamp = LocalDateTime.now();
-            this.nbErrors = this.nbErrors + 1;
-        }
+    void touch(long now) {
+        lastAccess = now;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
     }
 
+    /**
+     * @return true once the outcomes of the command have decayed away
+     */
+    boolean isIdle() {
+        return commandReliability.size() == 0;
+    }
+
+    private static class BannedSites {
+        // the unreliable sites lists it was built from
+        private final List<String> commandSites;
+        private final List<String> globalSites;
+        private final List<String> sites;
 
+        BannedSites(List<String> commandSites, List<String> globalSites, List<String> sites) {
+            this.commandSites = commandSites;
+            this.globalSites = globalSites;
+            this.sites = sites;
+        }
+    }
 }
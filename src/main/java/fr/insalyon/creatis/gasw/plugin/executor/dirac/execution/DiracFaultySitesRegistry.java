@@ -0,0 +1,105 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.apache.log4j.Logger;
+
+/**
+ * Faulty sites by command, shared by the monitor, the output parsers and the
+ * submitters, along with the reliability of the sites across all the
+ * commands. The commands whose outcomes have decayed away are evicted once
+ * idle for the TTL, by a sweep run at most once per TTL fraction. Beyond
+ * maxCommands, the least recently used ones are.
+ */
+public class DiracFaultySitesRegistry {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static final int SWEEPS_PER_TTL = 10;
+
+    private final Map<String, DiracFaultySites> commandFaultySitesMap = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final int maxCommands;
+    private final int maxSites;
+    private final long windowMillis;
+    private final double minFailures;
+    private final double failureRatio;
+    private final LongSupplier clock;
+    private final AtomicLong lastSweep;
+    private final DiracSiteReliability globalReliability;
+
+    /**
+     * @param ttlMillis time after which an idle command or site is evicted
+     * @param maxCommands commands kept at most
+     * @param maxSites sites kept at most per command, and for all of them
+     * @param windowMillis time after which a job outcome counts for half
+     * @param minFailures decayed failures from which a site can be banned
+     * @param failureRatio share of failures from which a site is banned
+     */
+    public DiracFaultySitesRegistry(long ttlMillis, int maxCommands, int maxSites,
+            long windowMillis, double minFailures, double failureRatio) {
+        this(ttlMillis, maxCommands, maxSites, windowMillis, minFailures, failureRatio, System::currentTimeMillis);
+    }
+
+    DiracFaultySitesRegistry(long ttlMillis, int maxCommands, int maxSites,
+            long windowMillis, double minFailures, double failureRatio, LongSupplier clock) {
+
+        this.ttlMillis = ttlMillis;
+        this.maxCommands = maxCommands;
+        this.maxSites = maxSites;
+        this.windowMillis = windowMillis;
+        this.minFailures = minFailures;
+        this.failureRatio = failureRatio;
+        this.clock = clock;
+        this.lastSweep = new AtomicLong(clock.getAsLong());
+        this.globalReliability = new DiracSiteReliability("all commands", windowMillis, minFailures,
+                failureRatio, maxSites, clock);
+    }
+
+    public DiracFaultySites get(String command) {
+        long now = clock.getAsLong();
+        DiracFaultySites faultySites = commandFaultySitesMap.computeIfAbsent(command,
+                c -> new DiracFaultySites(now,
+                        new DiracSiteReliability(c, windowMillis, minFailures, failureRatio, maxSites, clock),
+                        globalReliability));
+        faultySites.touch(now);
+
+        long sweep = lastSweep.get();
+        if (now - sweep > ttlMillis / SWEEPS_PER_TTL && lastSweep.compareAndSet(sweep, now)) {
+            evictIdle(now);
+        }
+        if (commandFaultySitesMap.size() > maxCommands) {
+            evictLeastRecentlyUsed(command);
+        }
+        return faultySites;
+    }
+
+    private void evictIdle(long now) {
+        commandFaultySitesMap.forEach((command, faultySites) -> {
+            if (now - faultySites.getLastAccess() > ttlMillis && faultySites.isIdle()) {
+                commandFaultySitesMap.remove(command, faultySites);
+                logger.debug("[DiracFaultySites] evicting idle command " + command);
+            }
+        });
+    }
+
+    private void evictLeastRecentlyUsed(String current) {
+        while (commandFaultySitesMap.size() > maxCommands) {
+            Optional<Map.Entry<String, DiracFaultySites>> leastRecent = commandFaultySitesMap.entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals(current))
+                    .min(Comparator.comparingLong(entry -> entry.getValue().getLastAccess()));
+            if (leastRecent.isEmpty()) {
+                return;
+            }
+            commandFaultySitesMap.remove(leastRecent.get().getKey(), leastRecent.get().getValue());
+            logger.debug("[DiracFaultySites] evicting least recently used command " + leastRecent.get().getKey());
+        }
+    }
+
+    int size() {
+        return commandFaultySitesMap.size();
+    }
+}
@@ -33,24 +33,24 @@
 package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
 
 import fr.insalyon.creatis.gasw.GaswConfiguration;
 import fr.insalyon.creatis.gasw.GaswConstants;
 import fr.insalyon.creatis.gasw.GaswException;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
-import fr.insalyon.creatis.gasw.util.VelocityUtil;
 
 /**
  *
@@ -62,16 +62,25 @@ public class DiracJdlGenerator {
     private static DiracJdlGenerator instance;
 
     private String scriptPath;
+    private String jobGroup;
     private int cpuTime;
     private int priority;
     private String site;
+    private List<String> configuredSites;
     private String bannedSites;
-    private String defaultBannedSites;
-    private Map<String, String> commandBannedSitesMap;
-    private Map<String, DiracFaultySites> commandFaultySitesMap;
+    private List<String> configuredBannedSites;
+    private DiracFaultySitesRegistry faultySitesRegistry;
+    private DiracSiteStatistics siteStatistics;
+    // null when the configured sites are used as they are
+    private DiracSiteSelector siteSelector;
     private String tags;
+    // parsed once, the simulation constants are shared by all the jobs
+    private final Template jdlTemplate;
+    private final Template parametricJdlTemplate;
+    private final VelocityContext simulationContext;
+    private final String jobNameSuffix;
 
-    public static DiracJdlGenerator getInstance() throws GaswException {
+    public synchronized static DiracJdlGenerator getInstance() throws GaswException {
         if (instance == null) {
             instance = new DiracJdlGenerator();
         }
@@ -82,114 +91,168 @@ public class DiracJdlGenerator {
         DiracConfiguration conf = DiracConfiguration.getInstance();
 
         scriptPath = new File(GaswConstants.SCRIPT_ROOT).getAbsolutePath();
+        jobGroup = toJobGroup(GaswConfiguration.getInstance().getSimulationID());
         cpuTime = conf.isBalanceEnabled()
                 ? GaswConfiguration.getInstance().getDefaultCPUTime() + ((new Random()).nextInt(10) * 900)
                 : GaswConfiguration.getInstance().getDefaultCPUTime();
         priority = conf.getDefaultPriority();
-        site = String.join(",", conf.getSites());
-        defaultBannedSites = "";
-        defaultBannedSites = String.join(",", conf.getBannedSites());
-        bannedSites = this.defaultBannedSites;
-        commandBannedSitesMap = new HashMap<>();
-        commandFaultySitesMap = new HashMap<>();
+        configuredSites = conf.getSites();
+        site = String.join(",", configuredSites);
+        siteStatistics = new DiracSiteStatistics(TimeUnit.SECONDS.toMillis(conf.getSiteSelectionMaxAge()));
+        if (conf.isSiteSelectionEnabled() && !configuredSites.isEmpty()) {
+            siteSelector = new DiracSiteSelector(siteStatistics, conf.getSiteSelectionSlowdown(),
+                    conf.getSiteSelectionMin());
+        }
+        configuredBannedSites = conf.getBannedSites();
+        bannedSites = String.join(",", configuredBannedSites);
+        faultySitesRegistry = new DiracFaultySitesRegistry(TimeUnit.SECONDS.toMillis(conf.getFaultySitesTtl()),
+                conf.getFaultySitesMax(), conf.getFaultySitesMax(),
+                TimeUnit.SECONDS.toMillis(conf.getSiteReliabilityWindow()),
+                conf.getSiteReliabilityMinFailures(), conf.getSiteReliabilityFailureRatio() / 100.0);
         tags = String.join(",", conf.getTags());
+
+        try {
+            VelocityEngine engine = new VelocityEngine();
+            engine.setProperty(RuntimeConstants.RESOURCE_LOADER, "class");
+            engine.setProperty("class.resource.loader.class", ClasspathResourceLoader.class.getName());
+            engine.init();
+            jdlTemplate = engine.getTemplate("vm/jdl/dirac-jdl.vm");
+            parametricJdlTemplate = engine.getTemplate("vm/jdl/dirac-parametric-jdl.vm");
+        } catch (Exception ex) {
+            throw new GaswException("Unable to load the JDL templates: " + ex.getMessage());
+        }
+        String simulationID = GaswConfiguration.getInstance().getSimulationID();
+        jobNameSuffix = " - " + simulationID;
+        simulationContext = new VelocityContext();
+        simulationContext.put("simulationID", simulationID);
+        simulationContext.put("jobGroup", jobGroup);
+        simulationContext.put("scriptPath", scriptPath);
+        simulationContext.put("cpuTime", cpuTime);
+        simulationContext.put("priority", priority);
+        simulationContext.put("site", site);
+        simulationContext.put("bannedSite", bannedSites);
+        simulationContext.put("tags", tags);
+        // since MoteurLite, include these additional variables
+        simulationContext.put("invPath", new File(GaswConstants.INVOCATION_DIR).getAbsolutePath());
+        simulationContext.put("configPath", new File(GaswConstants.CONFIG_DIR).getAbsolutePath());
+        simulationContext.put("workflowFile",
+                new File(GaswConfiguration.getInstance().getBoutiquesFilename()).getAbsolutePath());
+    }
+
+    public String generate(String scriptName) throws GaswException {
+        return generate(scriptName, site, bannedSites);
     }
 
-    public String generate(String scriptName) {
+    /**
+     * Generates the JDL of a job right before its submission, with the
+     * current banned sites of its command and, with site selection, the
+     * fastest of the configured sites.
+     */
+    public String generateForSubmission(String scriptName, String command) throws GaswException {
+        List<String> bannedSitesList = getBannedSitesList(command);
+        return generate(scriptName, getSites(bannedSitesList), String.join(",", bannedSitesList));
+    }
+
+    private String generate(String scriptName, String sites, String bannedSites) throws GaswException {
 
         try {
-            String jobName = scriptName.split("\\.")[0] + " - " + GaswConfiguration.getInstance().getSimulationID();
-
-            VelocityUtil velocity = new VelocityUtil("vm/jdl/dirac-jdl.vm");
-
-            // Add common variables to Velocity context
-            velocity.put("jobName", jobName);
-            velocity.put("scriptPath", scriptPath);
-            velocity.put("scriptName", scriptName);
-            velocity.put("cpuTime", cpuTime);
-            velocity.put("priority", priority);
-            velocity.put("site", site);
-            velocity.put("bannedSite", bannedSites);
-            velocity.put("tags", tags);
-
-            // since MoteurLite, include these additional variables    
-            String invPath = new File(GaswConstants.INVOCATION_DIR).getAbsolutePath();
-            String configPath = new File(GaswConstants.CONFIG_DIR).getAbsolutePath();
-            String workflowFile = new File(GaswConfiguration.getInstance().getBoutiquesFilename()).getAbsolutePath();
-            String invName = scriptName.replace(".sh", "") + "-invocation.json";
-            String configName = scriptName.replace(".sh", "") + "-configuration.sh";
-
-            velocity.put("invName", invName);
-            velocity.put("configName", configName);
-            velocity.put("invPath", invPath);
-            velocity.put("configPath", configPath);
-            velocity.put("workflowFile", workflowFile);
-
-            String command = scriptName.replaceAll("(-[0-9]+.sh)$", "");
-            if (!commandBannedSitesMap.containsKey(command)) {
-                commandBannedSitesMap.put(command, bannedSites);
-            }
+            VelocityContext context = new VelocityContext(simulationContext);
+            context.put("site", sites);
+            context.put("bannedSite", bannedSites);
+            context.put("jobName", scriptName.split("\\.")[0] + jobNameSuffix);
+            context.put("scriptName", scriptName);
+            String baseName = scriptName.replace(".sh", "");
+            context.put("invName", baseName + "-invocation.json");
+            context.put("configName", baseName + "-configuration.sh");
 
-            return velocity.merge().toString();
+            return merge(jdlTemplate, context);
 
-        } catch (Exception ex) {
-            logger.error(ex);
-            return "";
+        } catch (RuntimeException ex) {
+            throw new GaswException("Unable to generate the JDL of " + scriptName + ": " + ex.getMessage());
         }
     }
 
-    private void replaceLineInJdl(String jdlFile, String keyword, String replacement) {
+    /**
+     * Generates a DIRAC parametric JDL running the given scripts, one job
+     * per script. The scripts are expected to be invocations of the same
+     * command, which share the same JDL apart from their file names.
+     *
+     * @param scriptNames script names, without their .sh extension
+     */
+    public String generateParametric(List<String> scriptNames, String command) throws GaswException {
+
         try {
-            // Replacing the whole line containing the keyword
-            String regex = "(.*" + keyword + ".*)";
-            String jdlFilePath = GaswConstants.JDL_ROOT + "/" + jdlFile;
-            Path path = Paths.get(jdlFilePath);
-            Stream<String> lines = Files.lines(path);
-            List<String> replaced = lines.map(line -> line.replaceAll(regex, replacement)).collect(Collectors.toList());
-            Files.write(path, replaced);
-            lines.close();
-        } catch (IOException e) {
-            logger.error(e);
+            VelocityContext context = new VelocityContext(simulationContext);
+            List<String> bannedSitesList = getBannedSitesList(command);
+            context.put("site", getSites(bannedSitesList));
+            context.put("bannedSite", String.join(",", bannedSitesList));
+            context.put("parameters", scriptNames.stream()
+                    .map(name -> "\"" + name + "\"")
+                    .collect(Collectors.joining(", ")));
+
+            return merge(parametricJdlTemplate, context);
+
+        } catch (RuntimeException ex) {
+            throw new GaswException("Unable to generate the parametric JDL of " + scriptNames.size()
+                    + " jobs of " + command + ": " + ex.getMessage());
         }
     }
 
-    public void updateBannedSitesInJdl(String jdlFile) throws GaswException {
-        String command = jdlFile.replaceAll("(-[0-9]+.jdl)$", "");
-        List<String> newlyBannedSitesList = getDiracFaultySites(command).getBannedSitesList();
-        String keyword = "BannedSite";
-        StringBuilder bannedSitesBuilder = new StringBuilder();
-
-        if (!newlyBannedSitesList.isEmpty()) {
-
-            String existingBannedSites = this.commandBannedSitesMap.get(command);
-            if (!existingBannedSites.isEmpty()) {
-                String[] existingBannedSitesArray = existingBannedSites.split(",");
-                for (String bSite : existingBannedSitesArray) {
-                    if (newlyBannedSitesList.contains(bSite)) {
-                        newlyBannedSitesList.remove(bSite);
-                    }
-                }
-                bannedSitesBuilder.append(existingBannedSites);
-            }
-            if (!newlyBannedSitesList.isEmpty()) {
-                for (String bSite : newlyBannedSitesList) {
-                    if (bannedSitesBuilder.length() > 0) {
-                        bannedSitesBuilder.append(",");
-                    }
-                    bannedSitesBuilder.append(bSite);
-                }
-                String finalLine = "BannedSite = \"" + bannedSitesBuilder.toString() + "\";";
-                replaceLineInJdl(jdlFile, keyword, finalLine);
-                logger.info("Replacing old banned sites with new list: " + finalLine + " for command " + command);
+    private static String merge(Template template, VelocityContext context) {
+        StringWriter writer = new StringWriter();
+        template.merge(context, writer);
+        return writer.toString();
+    }
+
+    /**
+     * DIRAC job groups are limited to 32 characters, without spaces.
+     */
+    private static String toJobGroup(String simulationID) {
+        String group = simulationID.replaceAll("[^A-Za-z0-9_.-]", "_");
+        return group.length() > 32 ? group.substring(group.length() - 32) : group;
+    }
+
+    public String getJobGroup() {
+        return jobGroup;
+    }
+
+    /**
+     * With dynamic ban enabled, the sites currently failing for the command
+     * are banned on top of the configured ones. The failing sites are
+     * cached, see DiracFaultySites, and a ban is logged once, when the site
+     * becomes unreliable.
+     *
+     * @return the banned sites for a new submission of the command
+     */
+    public List<String> getBannedSitesList(String command) throws GaswException {
+        if (!DiracConfiguration.getInstance().isDynamicBanEnabled()) {
+            return configuredBannedSites;
+        }
+        List<String> faultySites = getDiracFaultySites(command).getBannedSitesList();
+        if (faultySites.isEmpty() || configuredBannedSites.containsAll(faultySites)) {
+            return configuredBannedSites;
+        }
+        List<String> bannedSitesList = new ArrayList<>(configuredBannedSites);
+        for (String faultySite : faultySites) {
+            if (!configuredBannedSites.contains(faultySite)) {
+                bannedSitesList.add(faultySite);
             }
         }
+        return bannedSitesList;
+    }
 
+    private String getSites(List<String> bannedSitesList) {
+        if (siteSelector == null) {
+            return site;
+        }
+        return String.join(",", siteSelector.select(configuredSites, bannedSitesList));
+    }
+
+    public DiracSiteStatistics getSiteStatistics() {
+        return siteStatistics;
     }
 
     public DiracFaultySites getDiracFaultySites(String command) {
-        if (!commandFaultySitesMap.containsKey(command)) {
-            commandFaultySitesMap.put(command, new DiracFaultySites());
-        }
-        return this.commandFaultySitesMap.get(command);
+        return faultySitesRegistry.get(command);
     }
 }
@@ -0,0 +1,133 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.apache.log4j.Logger;
+
+/**
+ * Coalesces the kill requests of the monitor. Jobs added within the linger
+ * window are deleted together, with a single dirac-wms-job-delete call run
+ * off the monitor thread. A job already waiting, being deleted or deleted
+ * but not yet recorded as such by the monitor is not added again, and the
+ * monitor leaves it alone meanwhile.
+ */
+public class DiracKillQueue {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+
+    private final Function<List<Job>, List<Job>> killer;
+    private final long lingerMillis;
+    private final ScheduledExecutorService executor;
+    private final List<Job> pending = new ArrayList<>();
+    // deleted jobs whose status the monitor has not written yet
+    private final Map<String, Job> deleted = new LinkedHashMap<>();
+    // IDs of the pending jobs, of the ones being deleted and of the deleted ones
+    private final Set<String> queuedIds = new HashSet<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param killer deletes a list of jobs in DIRAC and returns the ones
+     * actually deleted
+     */
+    public DiracKillQueue(Function<List<Job>, List<Job>> killer, long lingerMillis) {
+        this.killer = killer;
+        this.lingerMillis = lingerMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dirac-kill-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized void add(Job job) {
+        if (!queuedIds.add(job.getId())) {
+            logger.debug("[DIRAC] job " + job.getId() + " already queued for deletion");
+            return;
+        }
+        pending.add(job);
+        if (!flushScheduled) {
+            try {
+                executor.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+                flushScheduled = true;
+            } catch (RejectedExecutionException ex) {
+                // shut down: the next flush() call deletes the job
+            }
+        }
+    }
+
+    /**
+     * Deletes the pending jobs in the calling thread.
+     */
+    public void flush() {
+        List<Job> jobs;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            jobs = new ArrayList<>(pending);
+            pending.clear();
+        }
+        List<Job> done = List.of();
+        try {
+            logger.info("[DIRAC] deleting " + jobs.size() + " jobs");
+            done = killer.apply(jobs);
+        } catch (RuntimeException ex) {
+            logger.error("[DIRAC] error deleting jobs " + jobs, ex);
+        } finally {
+            synchronized (this) {
+                done.forEach(job -> deleted.put(job.getId(), job));
+                // the jobs not deleted can be killed again
+                jobs.stream()
+                        .filter(job -> !deleted.containsKey(job.getId()))
+                        .forEach(job -> queuedIds.remove(job.getId()));
+            }
+        }
+    }
+
+    /**
+     * @return the deleted jobs whose status is not recorded yet, including
+     * the ones of a previous cycle whose changes could not be written
+     */
+    public synchronized List<Job> getDeleted() {
+        return new ArrayList<>(deleted.values());
+    }
+
+    /**
+     * Called once the status of the deleted jobs is written: they can be
+     * killed again from then on.
+     */
+    public synchronized void recorded(Collection<Job> jobs) {
+        for (Job job : jobs) {
+            deleted.remove(job.getId());
+            queuedIds.remove(job.getId());
+        }
+    }
+
+    /**
+     * @return true if the job is waiting to be deleted, being deleted, or
+     * deleted but not recorded yet
+     */
+    public synchronized boolean isQueued(String jobId) {
+        return queuedIds.contains(jobId);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -37,13 +37,23 @@ import fr.insalyon.creatis.gasw.bean.*;
 import fr.insalyon.creatis.gasw.dao.*;
 import fr.insalyon.creatis.gasw.execution.GaswMonitor;
 import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.ListenerPlugin;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConstants;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.DiracDAOFactory;
-import java.io.BufferedReader;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.JobPoolSignal;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
@@ -52,6 +62,25 @@ public class DiracMonitor extends GaswMonitor {
 
     private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
     private static DiracMonitor instance;
+    private static final DateTimeFormatter DIRAC_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+    // margin on the job group polling date, for clock skews and slow cycles
+    private static final Duration JOB_GROUP_POLLING_MARGIN = Duration.ofMinutes(2);
+    private final ExecutorService statusExecutor;
+    private final DiracOutputRetriever outputRetriever;
+    private final DiracKillQueue killQueue;
+    private Instant lastStatusPolling;
+    private int cycleQueries;
+    private volatile int lastCycleQueries;
+    // job changes of the current cycle, written in one transaction at its end
+    private final Map<String, Job> cycleUpdates = new LinkedHashMap<>();
+    private final List<Job> cycleStatusChanges = new ArrayList<>();
+    private final List<Runnable> cycleActions = new ArrayList<>();
+    private final Map<Integer, String> cycleCompletedInvocations = new HashMap<>();
+    // invocations of the active jobs with a job completed before the cycle
+    private Set<Integer> completedInvocations = Set.of();
+    private boolean cycleJobsFinished;
+    private int cyclesSinceFullPolling;
 
     public synchronized static DiracMonitor getInstance() throws GaswException {
         if (instance == null) {
@@ -63,6 +92,14 @@ public class DiracMonitor extends GaswMonitor {
 
     private DiracMonitor() throws GaswException {
         super();
+        statusExecutor = Executors.newFixedThreadPool(DiracConfiguration.getInstance().getStatusWorkers(), r -> {
+            Thread thread = new Thread(r, "dirac-status-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        outputRetriever = DiracOutputRetriever.getInstance();
+        killQueue = new DiracKillQueue(this::kill,
+                TimeUnit.SECONDS.toMillis(DiracConfiguration.getInstance().getKillLinger()));
         if (GaswConfiguration.getInstance().isMinorStatusEnabled()) {
             DiracMinorStatusServiceMonitor.getInstance();
         }
@@ -70,7 +107,6 @@ public class DiracMonitor extends GaswMonitor {
 
     @Override
     public void run() {
-        Process process = null;
         DiracJdlGenerator generator;
 
         while (true) {
@@ -78,196 +114,412 @@ public class DiracMonitor extends GaswMonitor {
                 generator = DiracJdlGenerator.getInstance();
                 verifySignaledJobs();
 
+                cycleQueries = 1;
                 List<Job> jobsList = jobDAO.getActiveJobs();
 
-                if (!jobsList.isEmpty()) {
+                try {
+                    if (!jobsList.isEmpty()) {
+                        Map<String, Job> activeJobs = new HashMap<>();
+                        jobsList.forEach(job -> activeJobs.put(job.getId(), job));
+                        loadCompletedInvocations(jobsList);
 
-                    List<String> command = new ArrayList<String>();
-                    command.add("dirac-wms-job-status");
-
-                    for (Job job : jobsList) {
-                        command.add(job.getId());
-                    }
-
-                    process = DiracProcessUtils.getDiracProcess(logger, command.toArray(new String[]{}));
-
-                    BufferedReader br = GaswUtil.getBufferedReader(process);
-
-                    StringBuilder cout = new StringBuilder();
-                    String s = null;
-
-                    List<String> jobIdsReturnedByDirac = new ArrayList<>();
-
-                    while ((s = br.readLine()) != null) {
-
-                        if (s.contains("JobID=")) {
-                            cout.append(s).append("\n");
-
-                            Map<JobInfoType, String> jobInfos = getJobInfos(s);
-
-                            String jobIdReturnedByDirac = jobInfos.get(JobInfoType.JOBID);
-                            DiracStatus status = DiracStatus.valueOf(jobInfos.get(JobInfoType.STATUS));
-                            String diracSite = jobInfos.get(JobInfoType.SITE);
-                            Job job = jobDAO.getJobByID(jobIdReturnedByDirac);
-
-                            if ( (job.getDiracSite() == null) && !(DiracConfiguration.getInstance().getSiteNamesToIgnore().contains(diracSite)) ) {
-                                logger.info("Dirac Monitor: setting dirac Site to ***" + diracSite + "*** for job id " + jobIdReturnedByDirac);
-                                job.setDiracSite(diracSite);
-                                jobDAO.update(job);
-                            }
-
-                            jobIdsReturnedByDirac.add(jobIdReturnedByDirac);
-                            // update the status in case of change, or in case of job that has just been replicated
-                            // (then it has the SUCCESSFULLY_SUBMITTED status)
-
-                            if (isReplica(job)) {
-                                // Another job of the same invocation has
-                                // finished successfully (probably just before,
-                                // in the same monitor run)
-                                logger.info("Dirac Monitor: job \"" + job.getId() + "\" [ status : "
-                                        + job.getStatus() + " ] is a replicate of a finished job");
-                                if (job.getStatus() != GaswStatus.CANCELLED_REPLICA && job.getStatus() != GaswStatus.DELETED_REPLICA) {
-                                    logger.info("Dirac Monitor: job \"" + job.getId() +
-                                            "\" [ status : " + job.getStatus() +
-                                            " ] is a replicate of a finished job" +
-                                            " but has not been properly killed");
-                                    job.setStatus(GaswStatus.KILL_REPLICA);
-                                    updateStatus(job);
-                                    kill(job);
-                                }
-                            } else if (status == DiracStatus.Running && job.getStatus() != GaswStatus.RUNNING) {
-                                job.setStatus(GaswStatus.RUNNING);
-                                // in case of job just replicated (so in SUCCESSFULLY_SUBMITTED
-                                // status), do not erase original (and real) download date
-                                if (job.getDownload() == null) {
-                                    job.setDownload(new Date());
-                                }
-                                updateStatus(job);
-
-                            } else if (status == DiracStatus.Waiting && job.getStatus() != GaswStatus.QUEUED) {
-                                job.setStatus(GaswStatus.QUEUED);
-                                job.setQueued(new Date());
-                                updateStatus(job);
-
-                            } else if (status == DiracStatus.Received && job.getStatus() != GaswStatus.SUCCESSFULLY_SUBMITTED) {
-                                job.setStatus(GaswStatus.SUCCESSFULLY_SUBMITTED);
-                                updateStatus(job);
-
-                            } else {
-                                boolean finished = true;
-
-                                switch (status) {
-                                    case Done:
-                                        job.setStatus(GaswStatus.COMPLETED);
-                                        generator.getDiracFaultySites((job.getCommand())).reportSuccessOnSite(job.getDiracSite());
-                                        break;
-                                    case Failed:
-                                        job.setStatus(GaswStatus.ERROR);
-                                        generator.getDiracFaultySites((job.getCommand())).reportErrorOnSite(job.getDiracSite());
-                                        break;
-                                    case Killed:
-                                        job.setStatus(GaswStatus.CANCELLED);
-                                        break;
-                                    case Stalled:
-                                        job.setStatus(GaswStatus.STALLED);
-                                        break;
-                                    case Completed:
-                                    case Completing:
-                                        logger.info("Dirac Monitor: job \"" + job.getId() + "\" has status \"" + status + "\"");
-                                    default:
-                                        finished = false;
-                                }
-
-                                if (finished) {
-                                    if (job.getQueued() == null) {
-                                        job.setQueued(job.getCreation());
-                                    }
-                                    if (job.getDownload() == null) {
-                                        job.setDownload(job.getQueued());
-                                    }
-                                    // As the job could be resubmited,
-                                    // mark it as replicating to avoid it
-                                    // being replicated
-                                    job.setReplicating(true);
-                                    updateStatus(job);
-                                    logger.info("Dirac Monitor: job \"" + job.getId() + "\" finished as \"" + status + "\"");
-
-                                    new DiracOutputParser(job.getId()).start();
-
-                                    if (job.getStatus() == GaswStatus.COMPLETED) {
-                                        killReplicas(job);
-                                    }
-                                } else if (job.getStatus() == GaswStatus.REPLICATE) {
-                                    logger.error("Dirac Monitor: job \"" + job.getId() + "\"" +
-                                            "should not have REPLICATED status after a monitor run");
-                                }
-                            }
+                        for (DiracStatusLine jobInfos : getActiveJobsStatus(jobsList, generator)) {
+                            updateJob(jobInfos, activeJobs, generator);
                         }
                     }
-                    br.close();
-                    process.waitFor();
-                    if (process.exitValue() != 0) {
-                        logger.error(cout);
-                    }
-                    closeProcess(process);
-                    checkMissingDiracJob(command.subList(1, command.size()), jobIdsReturnedByDirac);
+                    reportQueuedJobs(jobsList, generator);
+                    // after the status loop, which skips the deleted jobs
+                    updateDeletedJobs();
+                } finally {
+                    flushCycleUpdates();
                 }
+                lastCycleQueries = cycleQueries;
+                logger.debug("[DIRAC] monitoring cycle of " + jobsList.size() + " active jobs done with "
+                        + lastCycleQueries + " database queries, " + outputRetriever.getInFlight()
+                        + " outputs in retrieval and " + outputRetriever.getQueueDepth() + " queued");
                 Thread.sleep(GaswConfiguration.getInstance().getDefaultSleeptime());
 
-            } catch (IOException | GaswException | DAOException ex) {
+            } catch (GaswException | DAOException ex) {
                 logger.error("[DIRAC] error monitoring DIRAC jobs", ex);
             } catch (InterruptedException ex) {
                 logger.error("[DIRAC] jobs monitoring thread interrupted" + ex);
                 killActiveJobs();
                 break;
-            } finally {
-                closeProcess(process);
             }
         }
     }
 
-    private enum JobInfoType {
-        JOBID("JobID"),
-        STATUS("Status"),
-        SITE("Site");
+    /**
+     * When DIRAC workers are enabled, the status of the simulation jobs is
+     * queried by job group, and only the jobs updated in DIRAC since the
+     * previous cycle are returned. Jobs are queried by ID on the first cycle,
+     * every few cycles to catch up with jobs outside the group, and when the
+     * group query fails. Replicated jobs are always queried by ID, as their
+     * local status is reset while DIRAC may not report them as updated.
+     */
+    private List<DiracStatusLine> getActiveJobsStatus(List<Job> jobs, DiracJdlGenerator generator)
+            throws GaswException, InterruptedException {
+
+        DiracConfiguration conf = DiracConfiguration.getInstance();
+        Instant pollingStart = Instant.now();
+
+        if (conf.isWorkerEnabled() && conf.isStatusByJobGroupEnabled()
+                && lastStatusPolling != null
+                && cyclesSinceFullPolling < conf.getStatusFullPollingCycles()) {
+
+            List<DiracStatusLine> jobsInfos = getJobGroupStatus(
+                    generator.getJobGroup(), lastStatusPolling.minus(JOB_GROUP_POLLING_MARGIN));
+
+            if (jobsInfos != null) {
+                Set<String> activeJobIds = new HashSet<>();
+                jobs.forEach(job -> activeJobIds.add(job.getId()));
+                jobsInfos.removeIf(jobInfos -> !activeJobIds.contains(jobInfos.getJobId()));
+
+                Set<String> returnedJobIds = new HashSet<>();
+                jobsInfos.forEach(jobInfos -> returnedJobIds.add(jobInfos.getJobId()));
+                List<Job> replicatedJobs = jobs.stream()
+                        .filter(job -> job.isReplicating() && !returnedJobIds.contains(job.getId()))
+                        .toList();
+                jobsInfos.addAll(getJobsStatus(replicatedJobs));
+
+                lastStatusPolling = pollingStart;
+                cyclesSinceFullPolling++;
+                return jobsInfos;
+            }
+        }
+
+        List<DiracStatusLine> jobsInfos = getJobsStatus(jobs);
+        lastStatusPolling = pollingStart;
+        cyclesSinceFullPolling = 0;
+        return jobsInfos;
+    }
+
+    /**
+     * @return the status of the jobs of the group updated since the given
+     * date, or null if DIRAC could not be queried
+     */
+    private List<DiracStatusLine> getJobGroupStatus(String jobGroup, Instant since)
+            throws InterruptedException {
+
+        try {
+            DiracCommandResult result = DiracProcessUtils.execute(logger,
+                    DiracWorkerPool.GROUP_STATUS_COMMAND, jobGroup, DIRAC_DATE_FORMAT.format(since));
+
+            if (result.getExitValue() != 0) {
+                logger.error("[DIRAC] error getting the status of job group " + jobGroup
+                        + ", falling back to job IDs: " + result.getOutputAsString());
+                return null;
+            }
+            List<DiracStatusLine> jobsInfos = new ArrayList<>();
+            for (String s : result.getOutput()) {
+                DiracStatusLine jobInfos = DiracStatusLine.parse(s);
+                if (jobInfos != null) {
+                    jobsInfos.add(jobInfos);
+                }
+            }
+            return jobsInfos;
+
+        } catch (IOException | GaswException ex) {
+            logger.error("[DIRAC] error getting the status of job group " + jobGroup
+                    + ", falling back to job IDs", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Queries DIRAC for the status of the given jobs, in chunks run
+     * concurrently by the status workers. A chunk that fails is only logged:
+     * its jobs are queried again in the next monitoring cycle. If the
+     * monitor is interrupted, the chunks not done yet are cancelled.
+     */
+    private List<DiracStatusLine> getJobsStatus(List<Job> jobs)
+            throws GaswException, InterruptedException {
+
+        int chunkSize = DiracConfiguration.getInstance().getStatusChunkSize();
+        List<Future<List<DiracStatusLine>>> chunks = new ArrayList<>();
+
+        for (int i = 0; i < jobs.size(); i += chunkSize) {
+            List<String> jobIds = jobs.subList(i, Math.min(i + chunkSize, jobs.size())).stream()
+                    .map(Job::getId)
+                    .toList();
+            chunks.add(statusExecutor.submit(() -> getJobsStatusChunk(jobIds)));
+        }
+
+        List<DiracStatusLine> jobsInfos = new ArrayList<>();
+        for (Future<List<DiracStatusLine>> chunk : chunks) {
+            try {
+                jobsInfos.addAll(chunk.get());
+            } catch (ExecutionException ex) {
+                logger.error("[DIRAC] error getting the status of a chunk of DIRAC jobs", ex.getCause());
+            } catch (InterruptedException ex) {
+                // the monitor is stopping: do not leave the other chunks running
+                chunks.forEach(remaining -> remaining.cancel(true));
+                throw ex;
+            }
+        }
+        return jobsInfos;
+    }
+
+    private List<DiracStatusLine> getJobsStatusChunk(List<String> jobIds)
+            throws IOException, GaswException, InterruptedException {
+
+        List<String> command = new ArrayList<String>();
+        command.add("dirac-wms-job-status");
+        command.addAll(jobIds);
+
+        DiracCommandResult result = DiracProcessUtils.execute(logger, command.toArray(new String[]{}));
+
+        StringBuilder cout = new StringBuilder();
+        List<DiracStatusLine> jobsInfos = new ArrayList<>();
+        List<String> jobIdsReturnedByDirac = new ArrayList<>();
+
+        for (String s : result.getOutput()) {
+            DiracStatusLine jobInfos = DiracStatusLine.parse(s);
+            if (jobInfos != null) {
+                cout.append(s).append("\n");
+                jobsInfos.add(jobInfos);
+                jobIdsReturnedByDirac.add(jobInfos.getJobId());
+            }
+        }
+        if (result.getExitValue() != 0) {
+            logger.error(cout);
+        }
+        checkMissingDiracJob(jobIds, jobIdsReturnedByDirac);
+        return jobsInfos;
+    }
+
+    private void updateJob(DiracStatusLine jobInfos, Map<String, Job> activeJobs,
+            DiracJdlGenerator generator) throws GaswException, DAOException {
+
+        String jobIdReturnedByDirac = jobInfos.getJobId();
+        DiracStatus status = jobInfos.getStatus();
+        String diracSite = jobInfos.getSite();
+        if (status == null) {
+            logger.warn("Dirac Monitor: unknown status \"" + jobInfos.getStatusText()
+                    + "\" for job id " + jobIdReturnedByDirac);
+            return;
+        }
+        if (killQueue.isQueued(jobIdReturnedByDirac)) {
+            // its final status is set once deleted, not from DIRAC
+            return;
+        }
+        Job job = activeJobs.get(jobIdReturnedByDirac);
+        boolean inSnapshot = job != null;
+        if (!inSnapshot) {
+            // not in the snapshot of this cycle (e.g. replicated meanwhile)
+            cycleQueries++;
+            job = jobDAO.getJobByID(jobIdReturnedByDirac);
+        }
+
+        if ( (job.getDiracSite() == null) && !(DiracConfiguration.getInstance().getSiteNamesToIgnore().contains(diracSite)) ) {
+            logger.info("Dirac Monitor: setting dirac Site to ***" + diracSite + "*** for job id " + jobIdReturnedByDirac);
+            job.setDiracSite(diracSite);
+            cycleUpdates.put(job.getId(), job);
+        }
+
+        // update the status in case of change, or in case of job that has just been replicated
+        // (then it has the SUCCESSFULLY_SUBMITTED status)
+
+        if (isCycleReplica(job) || isSnapshotReplica(job, inSnapshot)) {
+            // Another job of the same invocation has
+            // finished successfully (probably just before,
+            // in the same monitor run)
+            logger.info("Dirac Monitor: job \"" + job.getId() + "\" [ status : "
+                    + job.getStatus() + " ] is a replicate of a finished job");
+            if (job.getStatus() != GaswStatus.CANCELLED_REPLICA && job.getStatus() != GaswStatus.DELETED_REPLICA) {
+                logger.info("Dirac Monitor: job \"" + job.getId() +
+                        "\" [ status : " + job.getStatus() +
+                        " ] is a replicate of a finished job" +
+                        " but has not been properly killed");
+                job.setStatus(GaswStatus.KILL_REPLICA);
+                updateCycleStatus(job);
+                Job replica = job;
+                cycleActions.add(() -> killQueue.add(replica));
+            }
+        } else if (status == DiracStatus.Running && job.getStatus() != GaswStatus.RUNNING) {
+            job.setStatus(GaswStatus.RUNNING);
+            // in case of job just replicated (so in SUCCESSFULLY_SUBMITTED
+            // status), do not erase original (and real) download date
+            if (job.getDownload() == null) {
+                job.setDownload(new Date());
+                if (job.getDiracSite() != null && job.getCreation() != null) {
+                    generator.getSiteStatistics().reportWait(job.getDiracSite(),
+                            job.getDownload().getTime() - job.getCreation().getTime());
+                }
+            }
+            updateCycleStatus(job);
+
+        } else if (status == DiracStatus.Waiting && job.getStatus() != GaswStatus.QUEUED) {
+            job.setStatus(GaswStatus.QUEUED);
+            job.setQueued(new Date());
+            updateCycleStatus(job);
+
+        } else if (status == DiracStatus.Received && job.getStatus() != GaswStatus.SUCCESSFULLY_SUBMITTED) {
+            job.setStatus(GaswStatus.SUCCESSFULLY_SUBMITTED);
+            updateCycleStatus(job);
+
+        } else {
+            boolean finished = true;
+
+            switch (status) {
+                case Done:
+                    job.setStatus(GaswStatus.COMPLETED);
+                    generator.getDiracFaultySites((job.getCommand())).reportSuccessOnSite(job.getDiracSite());
+                    if (job.getDiracSite() != null && job.getDownload() != null) {
+                        generator.getSiteStatistics().reportRun(job.getDiracSite(),
+                                System.currentTimeMillis() - job.getDownload().getTime());
+                    }
+                    break;
+                case Failed:
+                    job.setStatus(GaswStatus.ERROR);
+                    generator.getDiracFaultySites((job.getCommand())).reportErrorOnSite(job.getDiracSite());
+                    break;
+                case Killed:
+                    job.setStatus(GaswStatus.CANCELLED);
+                    break;
+                case Stalled:
+                    job.setStatus(GaswStatus.STALLED);
+                    break;
+                case Completed:
+                case Completing:
+                    logger.info("Dirac Monitor: job \"" + job.getId() + "\" has status \"" + status + "\"");
+                default:
+                    finished = false;
+            }
 
-        private String text;
-        JobInfoType(String text) {
-            this.text = text;
+            if (finished) {
+                if (job.getQueued() == null) {
+                    job.setQueued(job.getCreation());
+                }
+                if (job.getDownload() == null) {
+                    job.setDownload(job.getQueued());
+                }
+                // As the job could be resubmited,
+                // mark it as replicating to avoid it
+                // being replicated
+                job.setReplicating(true);
+                updateCycleStatus(job);
+                logger.info("Dirac Monitor: job \"" + job.getId() + "\" finished as \"" + status + "\"");
+
+                Job finishedJob = job;
+                cycleActions.add(() -> outputRetriever.retrieve(finishedJob.getId()));
+                cycleJobsFinished = true;
+
+                if (job.getStatus() == GaswStatus.COMPLETED) {
+                    cycleCompletedInvocations.put(job.getInvocationID(), job.getId());
+                    cycleActions.add(() -> killReplicas(finishedJob));
+                }
+            } else if (job.getStatus() == GaswStatus.REPLICATE) {
+                logger.error("Dirac Monitor: job \"" + job.getId() + "\"" +
+                        "should not have REPLICATED status after a monitor run");
+            }
         }
-        String getText() {
-            return this.text;
+    }
+
+    /**
+     * Reports the age of the oldest job still queued on each site, which
+     * counts in its wait before any of these jobs starts.
+     */
+    private void reportQueuedJobs(List<Job> jobs, DiracJdlGenerator generator) {
+        long now = System.currentTimeMillis();
+        Map<String, Long> ages = new HashMap<>();
+        for (Job job : jobs) {
+            if (job.getStatus() == GaswStatus.QUEUED && job.getDiracSite() != null && job.getCreation() != null) {
+                ages.merge(job.getDiracSite(), now - job.getCreation().getTime(), Math::max);
+            }
         }
+        generator.getSiteStatistics().reportQueued(ages);
+    }
+
+    /**
+     * Records a status change, persisted and notified to the listeners at
+     * the end of the cycle.
+     */
+    private void updateCycleStatus(Job job) {
+        cycleUpdates.put(job.getId(), job);
+        cycleStatusChanges.add(job);
     }
 
-    // format is
-    // JobID=121476332 ApplicationStatus=Unknown; MinorStatus=Execution Complete; Status=Done; Site=EGI.LPC.fr;
-    // OR
-    // JobID=2 Status=Done; MinorStatus=Execution Complete; Site=EELA.UTFSM.cl;
-    private Map<JobInfoType,String> getJobInfos(String diracStatusLine) {
-        String[] lineParts = diracStatusLine.split(" ");
-        Map<JobInfoType,String> infoMap = new HashMap<>();
-        enrich(infoMap, lineParts[0], JobInfoType.JOBID);
-        // remove JobID part
-        diracStatusLine = diracStatusLine.substring(diracStatusLine.indexOf(" ") + 1);
-        lineParts = diracStatusLine.split(";");
-        for (String linePart : lineParts) {
-            enrich(infoMap, linePart, JobInfoType.STATUS);
-            enrich(infoMap, linePart, JobInfoType.SITE);
+    /**
+     * Loads, in one query, the invocations of the active jobs that already
+     * have a completed job, instead of a query per job in isReplica.
+     */
+    private void loadCompletedInvocations(List<Job> jobs) throws DAOException {
+        Set<Integer> invocationIDs = new HashSet<>();
+        jobs.forEach(job -> invocationIDs.add(job.getInvocationID()));
+        cycleQueries++;
+        completedInvocations = DiracDAOFactory.getInstance().getDiracJobDAO()
+                .getCompletedInvocationIDs(invocationIDs);
+    }
+
+    /**
+     * An active job of the snapshot is not completed itself, so a completed
+     * job of its invocation is another one. The other jobs are checked in
+     * the database.
+     */
+    private boolean isSnapshotReplica(Job job, boolean inSnapshot) throws GaswException, DAOException {
+        if (inSnapshot) {
+            return completedInvocations.contains(job.getInvocationID());
         }
-        return infoMap;
+        cycleQueries++;
+        return isReplica(job);
+    }
+
+    /**
+     * The snapshot and isReplica only see the database, where the jobs
+     * completed in this cycle are not written yet.
+     */
+    private boolean isCycleReplica(Job job) {
+        String completedJobId = cycleCompletedInvocations.get(job.getInvocationID());
+        return completedJobId != null && !completedJobId.equals(job.getId());
     }
 
-    private void enrich(Map<JobInfoType,String> infoMap, String linePart, JobInfoType jobInfoType) {
-        linePart = linePart.trim();
-        String searchedText = jobInfoType.getText() + "=";
-        if (linePart.startsWith(searchedText)) {
-            String value = linePart.replace(searchedText, "");
-            value = value.trim();
-            infoMap.put(jobInfoType, value);
+    /**
+     * Writes the job changes of the cycle in a single transaction, then
+     * notifies the listeners in order and runs the actions that need these
+     * changes to be persisted (output parsing, kills).
+     */
+    private void flushCycleUpdates() throws GaswException, DAOException {
+        try {
+            if (!cycleUpdates.isEmpty()) {
+                cycleQueries++;
+                DiracDAOFactory.getInstance().getDiracJobDAO().updateAll(cycleUpdates.values());
+
+                for (Job job : cycleStatusChanges) {
+                    for (ListenerPlugin listener : GaswConfiguration.getInstance().getListenerPlugins()) {
+                        try {
+                            listener.jobStatusChanged(job);
+                        } catch (GaswException ex) {
+                            // the changes are committed: the cycle actions must still run
+                            logger.error("[DIRAC] error notifying status of job " + job.getId(), ex);
+                        }
+                    }
+                }
+            }
+            cycleActions.forEach(Runnable::run);
+            if (cycleJobsFinished) {
+                // capped simulations can submit again
+                JobPoolSignal.getInstance().finished();
+            }
+
+        } finally {
+            cycleJobsFinished = false;
+            cycleUpdates.clear();
+            cycleStatusChanges.clear();
+            cycleActions.clear();
+            cycleCompletedInvocations.clear();
+            completedInvocations = Set.of();
         }
     }
 
+    /**
+     * @return the number of database queries done by the status loop of the
+     * last monitoring cycle
+     */
+    public int getLastCycleQueries() {
+        return lastCycleQueries;
+    }
+
     private void checkMissingDiracJob(List<String> sentJobIds, List<String> returnedJobIds) {
         if (sentJobIds.size() == returnedJobIds.size()) {
             return;
@@ -297,94 +549,104 @@ public class DiracMonitor extends GaswMonitor {
                 parameters, DiracConstants.EXECUTOR_NAME));
     }
 
+    /**
+     * The job is deleted asynchronously, with the other jobs killed within
+     * the linger window of the kill queue. Until its DELETED status is
+     * written, a job signaled again is not deleted a second time.
+     */
     @Override
     protected void kill(Job job) {
-        kill(Arrays.asList(job));
+        killQueue.add(job);
     }
 
-    public void kill(List<Job> jobs) {
+    /**
+     * Run by the kill queue: deletes the jobs in DIRAC only. Their status is
+     * set by the monitor thread in its next cycle, so that it is written
+     * along with the other job changes and not overwritten by them.
+     *
+     * @return the deleted jobs
+     */
+    public List<Job> kill(List<Job> jobs) {
         String jobsIds = jobs.stream().map(Job::getId).collect(Collectors.joining(" "));
 
         // We decided to only keep GaswStatus.DELETED instead of GaswStatus.CANCELLED,
         // because now the command "dirac-wms-job-delete"
         // works for both queued and running jobs.
-        Process process = null;
-
         try {
             String command = "dirac-wms-job-delete";
-            process = DiracProcessUtils.getDiracProcess(logger, command, jobsIds);
-            process.waitFor();
-
-            BufferedReader br = GaswUtil.getBufferedReader(process);
-            String cout = "";
-            String s = null;
-            while ((s = br.readLine()) != null) {
-                cout += s;
-            }
-            br.close();
+            List<String> commandLine = new ArrayList<>();
+            commandLine.add(command);
+            jobs.forEach(job -> commandLine.add(job.getId()));
+            DiracCommandResult result = DiracProcessUtils.execute(logger, commandLine.toArray(new String[]{}));
 
-            if (process.exitValue() != 0) {
+            if (result.getExitValue() != 0) {
                 logger.error("Error using " + command + " on jobs " + jobsIds);
-                logger.error(cout);
+                logger.error(result.getOutputAsString());
             } else {
                 for (Job job: jobs) {
                     logger.info("Deleted DIRAC Job ID '" + job.getId()  + "' (current status : " + job.getStatus() + ")");
-                    // update status to set a final one : DELETED, with an optional _REPLICA suffix
-                    // at the beginning, status should be KILL or KILL_REPLICA, but we keep support if it was already a final one
-                    switch (job.getStatus()) {
-                        case KILL_REPLICA:
-                            job.setStatus(GaswStatus.DELETED_REPLICA);
-                            break;
-                        case KILL:
-                            job.setStatus(GaswStatus.DELETED);
-                            break;
-                        default:
-                            job.setStatus(GaswStatus.DELETED);
-                            logger.warn("Wrong job status to have a kill request." + job.getStatus());
-                            logger.warn("Job set to default status DELETED.");
-                            break;
-                    }
-                    updateStatus(job);
-    
-                    if (GaswStatus.DELETED.equals(job.getStatus())) {
-                        // invocation is over, inform moteur and listeners
-                        new DiracOutputParser(job.getId()).start();
-                    } else {
-                        // its a replica, gather few time information
-                        finaliseReplicaJob(job);
-                    }
-    
-                    logger.info("Dirac Monitor: job \"" + job.getId() + "\" finished as \"" + job.getStatus() + "\"");
                 }
+                return jobs;
             }
-        } catch (IOException | GaswException | DAOException ex) {
+        } catch (IOException | GaswException ex) {
             logger.error("[DIRAC] error killing jobs " + jobs, ex);
         } catch (InterruptedException ex) {
             logger.error("[DIRAC] Job killing thread interrupted" + ex);
-        } finally {
-            closeProcess(process);
         }
+        return List.of();
     }
 
+    /**
+     * Sets the final status of the jobs deleted since the previous cycle.
+     * The kill queue keeps them until this status is written.
+     */
+    private void updateDeletedJobs() {
+        List<Job> deleted = killQueue.getDeleted();
+        if (deleted.isEmpty()) {
+            return;
+        }
+        for (Job job : deleted) {
+            // update status to set a final one : DELETED, with an optional _REPLICA suffix
+            // at the beginning, status should be KILL or KILL_REPLICA, but we keep support if it was already a final one
+            switch (job.getStatus()) {
+                case KILL_REPLICA:
+                    job.setStatus(GaswStatus.DELETED_REPLICA);
+                    break;
+                case KILL:
+                    job.setStatus(GaswStatus.DELETED);
+                    break;
+                case DELETED_REPLICA:
+                case DELETED:
+                    // set in a cycle whose changes could not be written
+                    break;
+                default:
+                    job.setStatus(GaswStatus.DELETED);
+                    logger.warn("Wrong job status to have a kill request." + job.getStatus());
+                    logger.warn("Job set to default status DELETED.");
+                    break;
+            }
+
+            if (GaswStatus.DELETED.equals(job.getStatus())) {
+                // invocation is over, inform moteur and listeners
+                cycleActions.add(() -> outputRetriever.retrieve(job.getId()));
+            } else {
+                // its a replica, gather few time information
+                finaliseReplicaJob(job);
+            }
+            updateCycleStatus(job);
+
+            logger.info("Dirac Monitor: job \"" + job.getId() + "\" finished as \"" + job.getStatus() + "\"");
+        }
+        cycleActions.add(() -> killQueue.recorded(deleted));
+    }
 
     @Override
     protected void reschedule(Job job) {
-        Process process = null;
-
         try {
-            process = DiracProcessUtils.getDiracProcess(logger, "dirac-wms-job-reschedule", job.getId());
-            process.waitFor();
-
-            BufferedReader br = GaswUtil.getBufferedReader(process);
-            String cout = "";
-            String s = null;
-            while ((s = br.readLine()) != null) {
-                cout += s;
-            }
-            br.close();
+            DiracCommandResult result = DiracProcessUtils.execute(logger, "dirac-wms-job-reschedule", job.getId());
 
-            if (process.exitValue() != 0) {
-                logger.error(cout);
+            if (result.getExitValue() != 0) {
+                logger.error(result.getOutputAsString());
             } else {
                 job.setStatus(GaswStatus.SUCCESSFULLY_SUBMITTED);
                 // reset download time
@@ -396,8 +658,6 @@ public class DiracMonitor extends GaswMonitor {
             logger.error("[DIRAC] error rescheduling job " + job.getId(), ex);
         } catch (InterruptedException ex) {
             logger.error("[DIRAC] job rescheduling thread interrupted" + ex);
-        } finally {
-            closeProcess(process);
         }
     }
 
@@ -406,7 +666,8 @@ public class DiracMonitor extends GaswMonitor {
         try {
             logger.info("Replicating: " + job.getId() + " - " + job.getFileName());
             DiracDAOFactory.getInstance().getJobPoolDAO().add(
-                    new JobPool(job.getFileName(), job.getCommand(), job.getParameters()));
+                    new JobPool(job.getFileName(), job.getCommand(), job.getParameters(),
+                            JobPool.PRIORITY_RETRY, job.getInvocationID(), job.getSimulationID()));
 
             // waiting for VIP to support a new REPLICATED status, we reset the
             // status to SUCCESSFULLY_SUBMITTED
@@ -426,12 +687,14 @@ public class DiracMonitor extends GaswMonitor {
     @Override
     protected void killReplicas(Job job) {
         try {
-            for (Job j : jobDAO.getActiveJobsByInvocationID(job.getInvocationID())) {
+            List<Job> replicas = jobDAO.getActiveJobsByInvocationID(job.getInvocationID());
+            for (Job j : replicas) {
                 logger.info("Killing replica: " + j.getId() + " - " + j.getFileName());
-
                 j.setStatus(GaswStatus.KILL_REPLICA);
-                jobDAO.update(job);
-                kill(j);
+            }
+            if (!replicas.isEmpty()) {
+                DiracDAOFactory.getInstance().getDiracJobDAO().updateAll(replicas);
+                replicas.forEach(killQueue::add);
             }
 
         } catch (DAOException ex) {
@@ -444,24 +707,20 @@ public class DiracMonitor extends GaswMonitor {
         try {
             logger.info("Resuming: " + job.getId() + " - " + job.getFileName());
             DiracDAOFactory.getInstance().getJobPoolDAO().add(
-                    new JobPool(job.getFileName(), job.getCommand(), job.getParameters()));
+                    new JobPool(job.getFileName(), job.getCommand(), job.getParameters(),
+                            JobPool.PRIORITY_RETRY, job.getInvocationID(), job.getSimulationID()));
 
         } catch (DAOException ex) {
             logger.error("[DIRAC] error resuming job " + job.getId(), ex);
         }
     }
 
+    /**
+     * Written with the other changes of the cycle.
+     */
     protected void finaliseReplicaJob(Job job) {
-        try { 
-            DAOFactory factory = DAOFactory.getDAOFactory();
-            
-            job.setEnd(new Date());
-            job.setExitCode(GaswExitCode.EXECUTION_CANCELED.getExitCode());
-            factory.getJobDAO().update(job);
-
-        } catch (DAOException ex) {
-            logger.error("[DIRAC] error finalising job " + job.getId(), ex);
-        }
+        job.setEnd(new Date());
+        job.setExitCode(GaswExitCode.EXECUTION_CANCELED.getExitCode());
     }
 
     private void killActiveJobs() {
@@ -477,29 +736,22 @@ public class DiracMonitor extends GaswMonitor {
                 .peek((j) -> j.setStatus(GaswStatus.KILL))
                 .toList();
 
-            kill(jobs);
+            // the monitor is stopping: delete them now with the pending ones
+            jobs.forEach(killQueue::add);
+            killQueue.flush();
+            updateDeletedJobs();
+            flushCycleUpdates();
         } catch (DAOException | GaswException e) {
             logger.warn("Failed to kill the running jobs before terminating!", e);
         }
     }
 
-    private void closeProcess(Process process) {
-        if (process != null) {
-            try {
-                process.getOutputStream().close();
-                process.getInputStream().close();
-                process.getErrorStream().close();
-            } catch (IOException ex) {
-                logger.error(ex);
-            }
-        }
-        process = null;
-    }
-
     public static void terminate() throws InterruptedException {
         if (instance != null) {
             instance.interrupt();
             instance.join();
+            instance.statusExecutor.shutdownNow();
+            instance.killQueue.shutdown();
         }
     }
 }
@@ -39,15 +39,15 @@ import fr.insalyon.creatis.gasw.execution.GaswStatus;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.DiracDAOFactory;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
-import static fr.insalyon.creatis.gasw.plugin.executor.dirac.execution.DiracJdlGenerator.*;
-
 /**
  *
  * @author Rafael Ferreira da Silva, Tram Truong Huu
@@ -58,6 +58,8 @@ public class DiracOutputParser extends GaswOutputParser {
     private File stdOut;
     private File stdErr;
     private File provenance;
+    private volatile boolean outputFilesDownloaded;
+    private volatile GaswExitCode outputFilesExitCode = GaswExitCode.UNDEFINED;
 
     public DiracOutputParser(String jobID) {
         super(jobID);
@@ -68,22 +70,17 @@ public class DiracOutputParser extends GaswOutputParser {
 
         GaswExitCode gaswExitCode;
 
-        if (job.getStatus() != GaswStatus.CANCELLED
-                && job.getStatus() != GaswStatus.DELETED
-                && job.getStatus() != GaswStatus.STALLED) {
-
-            int remainingTries = 3;
+        if (needsOutputFiles()) {
 
-            gaswExitCode = getAndParseDiracOutputFiles();
-            while ( remainingTries > 0 && GaswExitCode.UNDEFINED.equals(gaswExitCode) ) {
-                logger.error("[Dirac] Error downloading logs for " + job.getId() + " . Remaining tries : " + remainingTries);
-                remainingTries--;
-                waitForNSeconds(10);
-                gaswExitCode = getAndParseDiracOutputFiles();
-            }
+            gaswExitCode = outputFilesExitCode;
 
             if (GaswExitCode.UNDEFINED.equals(gaswExitCode)) {
-                logger.error("[Dirac] dirac-wms-job-get-output failed 4 times for " + job.getId());
+                if (outputFilesDownloaded) {
+                    logger.error("[Dirac] no exit code found in the output files of " + job.getId());
+                } else {
+                    logger.error("[Dirac] dirac-wms-job-get-output failed "
+                            + (DiracConfiguration.getInstance().getOutputRetries() + 1) + " times for " + job.getId());
+                }
                 String message = "Output files do not exist.";
                 handleFiles (message);
 
@@ -115,70 +112,113 @@ public class DiracOutputParser extends GaswOutputParser {
                 uploadedResults, appStdOut, appStdErr, stdOut, stdErr);
     }
 
-    private void waitForNSeconds(int n) throws GaswException {
+    /**
+     * @return false if the job ended without output files to retrieve
+     */
+    public boolean needsOutputFiles() {
+        return job.getStatus() != GaswStatus.CANCELLED
+                && job.getStatus() != GaswStatus.DELETED
+                && job.getStatus() != GaswStatus.STALLED;
+    }
+
+    /**
+     * Downloads the output sandboxes of several jobs with a single
+     * dirac-wms-job-get-output call, each one in ./jobId. The command
+     * reports an error as soon as one sandbox is missing, so the downloads
+     * are checked job by job, on the standard output the exit code is read
+     * from. What a previous attempt left in ./jobId is removed first, so
+     * that it is not taken for a complete download. Retries are left to the
+     * caller, see DiracOutputRetriever.
+     *
+     * @return the IDs of the jobs whose output files were downloaded
+     */
+    public static Set<String> downloadOutputFiles(List<String> jobIds) throws InterruptedException {
+        for (String jobId : jobIds) {
+            clearOutputDirectory(new File("./" + jobId));
+        }
+        List<String> command = new ArrayList<>();
+        command.add("dirac-wms-job-get-output");
+        command.addAll(jobIds);
         try {
-            TimeUnit.SECONDS.sleep(10);
-        } catch (InterruptedException e) {
-            logger.error("[Dirac] Error getting gasw output", e);
-            throw new GaswException(e);
+            DiracCommandResult result = DiracProcessUtils.execute(logger, command.toArray(new String[]{}));
+
+            if (result.getExitValue() != 0) {
+                logger.error("[Dirac] Error doing dirac-wms-job-get-output for Job IDs: " + jobIds + " | Status : " + result.getExitValue());
+                logger.error(result.getOutputAsString());
+            }
+        } catch (IOException | GaswException ex) {
+            logger.error("[Dirac] Error getting gasw output", ex);
+        }
+
+        Set<String> downloaded = new HashSet<>();
+        for (String jobId : jobIds) {
+            if (isDownloaded(new File("./" + jobId))) {
+                downloaded.add(jobId);
+            }
+        }
+        return downloaded;
+    }
+
+    static boolean isDownloaded(File outputDirectory) {
+        return new File(outputDirectory, "std" + GaswConstants.OUT_EXT).isFile();
+    }
+
+    static void clearOutputDirectory(File outputDirectory) {
+        File[] files = outputDirectory.listFiles();
+        if (files == null) {
+            return;
         }
+        for (File file : files) {
+            if (!file.delete()) {
+                logger.warn("[Dirac] Unable to remove " + file + " before downloading the output files");
+            }
+        }
+    }
+
+    /**
+     * Parses the output files downloaded in ./jobId, before run() reports
+     * the result. Retries are left to the caller, see DiracOutputRetriever.
+     *
+     * @return false if no exit code could be read from them, in which case
+     * they can be downloaded and parsed again
+     */
+    public boolean parseOutputFiles() {
+        outputFilesDownloaded = true;
+        outputFilesExitCode = parseDiracOutputFiles();
+        return !GaswExitCode.UNDEFINED.equals(outputFilesExitCode);
     }
+
     /*
         In case of success, return the GaswExitCode
         In case of error, return GaswExitCode.UNDEFINED
      */
-    private GaswExitCode getAndParseDiracOutputFiles() throws GaswException {
-        Process process = null;
-        try {
-            process = DiracProcessUtils.getDiracProcess(logger, "dirac-wms-job-get-output", job.getId());
-            process.waitFor();
-
-            if (process.exitValue() != 0) {
-                BufferedReader br = GaswUtil.getBufferedReader(process);
-                String cout = "";
-                String s = null;
-                while ((s = br.readLine()) != null) {
-                    cout += s;
-                }
-                br.close();
-
-                logger.error("[Dirac] Error doing dirac-wms-job-get-output for Job ID: " + job.getId() + " | Status : " + process.exitValue());
-                logger.error(cout);
+    private GaswExitCode parseDiracOutputFiles() {
+        stdOut = moveDiracOutputStdFile(GaswConstants.OUT_EXT, GaswConstants.OUT_ROOT);
+        stdErr = moveDiracOutputStdFile(GaswConstants.ERR_EXT, GaswConstants.ERR_ROOT);
+        provenance = moveDiracOutputProvenanceFile();
+
+
+        new File("./" + job.getId()).delete();
+
+        int exitCode = parseStdOut(stdOut);
+        exitCode = parseStdErr(stdErr, exitCode);
+
+        switch (exitCode) {
+            case 0:
+                return GaswExitCode.SUCCESS;
+            case 1:
+                return GaswExitCode.ERROR_READ_GRID;
+            case 2:
+                return GaswExitCode.ERROR_WRITE_GRID;
+            case 3:
+                return GaswExitCode.ERROR_FILE_NOT_FOUND;
+            case 6:
+                return GaswExitCode.EXECUTION_FAILED;
+            case 7:
+                return GaswExitCode.ERROR_WRITE_LOCAL;
+            default:
+                logger.error("[Dirac] Error after parsing job logs, unknown exit code : " + exitCode);
                 return GaswExitCode.UNDEFINED;
-            }
-
-            stdOut = moveDiracOutputStdFile(GaswConstants.OUT_EXT, GaswConstants.OUT_ROOT);
-            stdErr = moveDiracOutputStdFile(GaswConstants.ERR_EXT, GaswConstants.ERR_ROOT);
-            provenance = moveDiracOutputProvenanceFile();
-
-
-            new File("./" + job.getId()).delete();
-
-            int exitCode = parseStdOut(stdOut);
-            exitCode = parseStdErr(stdErr, exitCode);
-
-            switch (exitCode) {
-                case 0:
-                    return GaswExitCode.SUCCESS;
-                case 1:
-                    return GaswExitCode.ERROR_READ_GRID;
-                case 2:
-                    return GaswExitCode.ERROR_WRITE_GRID;
-                case 3:
-                    return GaswExitCode.ERROR_FILE_NOT_FOUND;
-                case 6:
-                    return GaswExitCode.EXECUTION_FAILED;
-                case 7:
-                    return GaswExitCode.ERROR_WRITE_LOCAL;
-                default:
-                    logger.error("[Dirac] Error after parsing job logs, unknown exit code : " + exitCode);
-                    return GaswExitCode.UNDEFINED;
-            }
-        } catch (InterruptedException | IOException ex) {
-            logger.error("[Dirac] Error getting gasw output", ex);
-            throw new GaswException(ex);
-        } finally {
-            closeProcess(process);
         }
     }
 
@@ -232,37 +272,13 @@ public class DiracOutputParser extends GaswOutputParser {
         }
     }
 
-    /**
-     * Closes a process.
-     *
-     * @param process
-     * @throws IOException
-     */
-    private void closeProcess(Process process) {
-        if (process != null) {
-            try {
-                process.getOutputStream().close();
-                process.getInputStream().close();
-                process.getErrorStream().close();
-            } catch (IOException ex) {
-                logger.error(ex);
-            }
-        }
-        process = null;
-    }
-
     @Override
     protected void resubmit() throws GaswException {
-        DiracJdlGenerator generator = DiracJdlGenerator.getInstance();
-        if (DiracConfiguration.getInstance().isDynamicBanEnabled()) {
-            logger.info("Dynamic ban enabled : updating the banned site list");
-            generator.updateBannedSitesInJdl(job.getFileName() + ".jdl");
-        } else {
-            logger.info("Dynamic ban NOT enabled : NOT updating the banned site list");
-        }
+        // the banned sites are updated when the JDL is generated at submission
         try {
             DiracDAOFactory.getInstance().getJobPoolDAO().add(
-                    new JobPool(job.getFileName(), job.getCommand(), job.getParameters()));
+                    new JobPool(job.getFileName(), job.getCommand(), job.getParameters(),
+                            JobPool.PRIORITY_RETRY, job.getInvocationID(), job.getSimulationID()));
             
         } catch (DAOException ex) {
             throw new GaswException(ex);
@@ -0,0 +1,291 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import fr.insalyon.creatis.gasw.GaswException;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.apache.log4j.Logger;
+
+/**
+ * Retrieves and parses the outputs of finished jobs on a bounded pool of
+ * threads. At most queueSize jobs are admitted at once: when the queue is
+ * full, retrieve() blocks the caller, which slows the monitor down instead
+ * of piling up threads and dirac-wms-job-get-output processes.
+ *
+ * Output sandboxes are downloaded by batches of up to batchSize jobs in a
+ * single dirac-wms-job-get-output call, then each job is parsed on its own.
+ * The jobs of a batch whose sandbox is missing or has no exit code, or
+ * whose download was interrupted, are retried alone, as delayed tasks,
+ * without holding a thread. Every queued job is parsed in the end, with
+ * or without its output files.
+ */
+public class DiracOutputRetriever {
+
+    /**
+     * Downloads the output sandboxes of the jobs in ./jobId directories.
+     */
+    public interface OutputDownloader {
+        /**
+         * @return the IDs of the jobs whose sandbox was downloaded
+         */
+        Set<String> download(List<String> jobIds) throws InterruptedException;
+    }
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static DiracOutputRetriever instance;
+
+    private final Function<String, DiracOutputParser> parserFactory;
+    private final OutputDownloader downloader;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final int queueSize;
+    private final int batchSize;
+    private final int retries;
+    private final long retryDelay;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<Download> downloads = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean batchScheduled = new AtomicBoolean();
+
+    public synchronized static DiracOutputRetriever getInstance() throws GaswException {
+        if (instance == null) {
+            DiracConfiguration conf = DiracConfiguration.getInstance();
+            instance = new DiracOutputRetriever(DiracOutputParser::new, DiracOutputParser::downloadOutputFiles,
+                    conf.getOutputWorkers(), conf.getOutputQueueSize(), conf.getOutputBatchSize(),
+                    conf.getOutputRetries(), conf.getOutputRetryDelay());
+        }
+        return instance;
+    }
+
+    DiracOutputRetriever(Function<String, DiracOutputParser> parserFactory, OutputDownloader downloader,
+            int workers, int queueSize, int batchSize, int retries, long retryDelaySeconds) {
+
+        this.parserFactory = parserFactory;
+        this.downloader = downloader;
+        this.queueSize = queueSize;
+        this.batchSize = batchSize;
+        this.retries = retries;
+        this.retryDelay = retryDelaySeconds;
+        this.slots = new Semaphore(queueSize);
+        this.executor = new ScheduledThreadPoolExecutor(workers, r -> {
+            Thread thread = new Thread(r, "dirac-output-retriever");
+            // shutdown() lets the queued retrievals finish, they must not keep the JVM alive
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the output retrieval of a job, waiting for a free slot if the
+     * queue is full.
+     */
+    public void retrieve(String jobId) {
+        try {
+            if (!slots.tryAcquire()) {
+                logger.warn("[DIRAC] output retrieval queue full (" + queueSize + " jobs), waiting to queue job " + jobId);
+                slots.acquire();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.error("[DIRAC] interrupted while queueing the output retrieval of job " + jobId);
+            return;
+        }
+        try {
+            executor.execute(() -> prepare(jobId));
+        } catch (RejectedExecutionException ex) {
+            slots.release();
+            logger.error("[DIRAC] output retrieval stopped, output of job " + jobId + " not retrieved");
+        }
+    }
+
+    /**
+     * Loads the job, then either queues its sandbox download or parses it
+     * directly if it ended without output files.
+     */
+    private void prepare(String jobId) {
+        inFlight.incrementAndGet();
+        boolean downloading = false;
+        try {
+            DiracOutputParser parser = parserFactory.apply(jobId);
+            if (parser.needsOutputFiles()) {
+                downloading = true;
+                queueDownload(new Download(jobId, parser, 0));
+            } else {
+                parser.run();
+            }
+        } catch (RuntimeException ex) {
+            logger.error("[DIRAC] error retrieving output of job " + jobId, ex);
+        } finally {
+            inFlight.decrementAndGet();
+            if (!downloading) {
+                slots.release();
+            }
+        }
+    }
+
+    /**
+     * The batch task is queued behind the jobs already submitted, so the
+     * jobs finished in the same monitor cycle end up in the same batch.
+     * Once the retriever is shut down, the remaining work is done in the
+     * calling thread.
+     */
+    private void queueDownload(Download download) {
+        downloads.add(download);
+        scheduleBatch();
+    }
+
+    private void scheduleBatch() {
+        if (batchScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::downloadBatch);
+            } catch (RejectedExecutionException ex) {
+                downloadBatch();
+            }
+        }
+    }
+
+    private void downloadBatch() {
+        batchScheduled.set(false);
+        List<Download> batch = new ArrayList<>();
+        Download download;
+        while (batch.size() < batchSize && (download = downloads.poll()) != null) {
+            batch.add(download);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (!downloads.isEmpty()) {
+            scheduleBatch();
+        }
+
+        inFlight.addAndGet(batch.size());
+        try {
+            Set<String> downloaded = downloader.download(batch.stream().map(d -> d.jobId).toList());
+            for (Download d : batch) {
+                if (downloaded.contains(d.jobId)) {
+                    parse(d, true);
+                } else if (d.attempt < retries) {
+                    logger.error("[Dirac] Error downloading logs for " + d.jobId
+                            + " . Remaining tries : " + (retries - d.attempt));
+                    retry(d);
+                } else {
+                    parse(d, false);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            // the jobs still have to be parsed: tried again on another
+            // thread, or parsed without their output files
+            logger.error("[DIRAC] output retrieval of jobs " + batch + " interrupted");
+            for (Download d : batch) {
+                if (d.attempt < retries) {
+                    retry(d);
+                } else {
+                    parse(d, false);
+                }
+            }
+        } finally {
+            inFlight.addAndGet(-batch.size());
+        }
+    }
+
+    private void retry(Download d) {
+        try {
+            executor.schedule(() -> queueDownload(new Download(d.jobId, d.parser, d.attempt + 1)),
+                    retryDelay, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ex) {
+            // shut down: no more retries
+            parse(d, false);
+        }
+    }
+
+    /**
+     * Output files with no exit code are downloaded again while retries
+     * are left, as the sandbox may have been incomplete.
+     */
+    private void parse(Download d, boolean downloaded) {
+        Runnable parsing = () -> {
+            inFlight.incrementAndGet();
+            boolean retried = false;
+            try {
+                if (downloaded && !d.parser.parseOutputFiles() && d.attempt < retries) {
+                    logger.error("[Dirac] Error parsing logs for " + d.jobId
+                            + " . Remaining tries : " + (retries - d.attempt));
+                    retried = true;
+                    retry(d);
+                } else {
+                    d.parser.run();
+                }
+            } catch (RuntimeException ex) {
+                logger.error("[DIRAC] error parsing output of job " + d.jobId, ex);
+            } finally {
+                inFlight.decrementAndGet();
+                if (!retried) {
+                    slots.release();
+                }
+            }
+        };
+        try {
+            executor.execute(parsing);
+        } catch (RejectedExecutionException ex) {
+            parsing.run();
+        }
+    }
+
+    /**
+     * @return the number of queued jobs waiting for a thread, including the
+     * ones waiting for a retry
+     */
+    public int getQueueDepth() {
+        return queueSize - slots.availablePermits() - inFlight.get();
+    }
+
+    /**
+     * @return the number of jobs whose output is being retrieved or parsed
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Stops accepting jobs. The queued ones, including the pending retries,
+     * are still processed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public synchronized static void terminate() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    private static class Download {
+
+        private final String jobId;
+        private final DiracOutputParser parser;
+        private final int attempt;
+
+        private Download(String jobId, DiracOutputParser parser, int attempt) {
+            this.jobId = jobId;
+            this.parser = parser;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public String toString() {
+            return jobId;
+        }
+    }
+}
@@ -5,19 +5,81 @@ import fr.insalyon.creatis.gasw.GaswUtil;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
 import org.apache.log4j.Logger;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DiracProcessUtils {
 
 
+    /**
+     * Starts a dirac-* command. With the diracosrc cache enabled the command
+     * is launched directly with the cached DIRAC environment, otherwise a
+     * bash sources the diracosrc file before running it.
+     */
     public static Process getDiracProcess(Logger logger, String... command) throws IOException, GaswException {
 
+        DiracConfiguration conf = DiracConfiguration.getInstance();
+        if (conf.isDiracosrcCacheEnabled()) {
+            logger.debug("[DIRAC] running " + String.join(" ", command));
+            return DiracEnvironment.getInstance(conf.getDiracosrcPath()).start(command);
+        }
+        return getSourcedProcess(logger, conf.getDiracosrcPath(), command);
+    }
+
+    public static Process getSourcedProcess(Logger logger, String diracosrcPath, String... command) throws IOException {
+
         StringBuilder sb = new StringBuilder("source ")
-            .append(DiracConfiguration.getInstance().getDiracosrcPath()).append(";");
+            .append(diracosrcPath).append(";");
         for (String s : command) {
             sb.append(" ").append(s);
         }
         return GaswUtil.getProcess(logger, "bash", "-c", sb.toString());
     }
 
+    /**
+     * Process builder for commands that are not dirac-* executables but
+     * need the DIRAC environment, such as the DIRAC worker.
+     */
+    public static ProcessBuilder getDiracProcessBuilder(List<String> command) throws IOException, GaswException {
+
+        DiracConfiguration conf = DiracConfiguration.getInstance();
+        if (conf.isDiracosrcCacheEnabled()) {
+            return DiracEnvironment.getInstance(conf.getDiracosrcPath()).processBuilder(command)
+                .redirectErrorStream(false)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        }
+        return new ProcessBuilder("bash", "-c",
+                "source " + conf.getDiracosrcPath() + "; exec " + String.join(" ", command))
+            .redirectError(ProcessBuilder.Redirect.INHERIT);
+    }
+
+    /**
+     * Runs a dirac-* command and waits for its completion. The command goes
+     * through the DIRAC worker pool when it is enabled and supports it,
+     * otherwise a new process is spawned.
+     */
+    public static DiracCommandResult execute(Logger logger, String... command)
+            throws IOException, GaswException, InterruptedException {
+
+        if (DiracConfiguration.getInstance().isWorkerEnabled() && DiracWorkerPool.supports(command[0])) {
+            return DiracWorkerPool.getInstance().execute(command);
+        }
+
+        Process process = getDiracProcess(logger, command);
+        try (BufferedReader br = GaswUtil.getBufferedReader(process)) {
+            List<String> output = new ArrayList<>();
+            String s;
+            while ((s = br.readLine()) != null) {
+                output.add(s);
+            }
+            process.waitFor();
+            return new DiracCommandResult(process.exitValue(), output);
+
+        } finally {
+            process.getOutputStream().close();
+            process.getErrorStream().close();
+        }
+    }
 }
@@ -0,0 +1,224 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.apache.log4j.Logger;
+
+/**
+ * Successes and failures of the jobs on each site, decayed over a sliding
+ * window: an outcome counts for half as much once the window has passed
+ * since it was reported. A site is unreliable once its decayed failures
+ * reach minFailures and make up at least failureRatio of its outcomes.
+ *
+ * The counts are immutable and replaced atomically. Sites whose counts have
+ * decayed away are dropped, and beyond maxSites the least recently reported
+ * ones are.
+ *
+ * The list of unreliable sites is cached. It is rebuilt when a report or an
+ * eviction changes the state of a site, or when the earliest ban is due to
+ * expire: as successes and failures decay alike, a site is trusted again
+ * once its failures decay below minFailures, at a time known in advance.
+ */
+public class DiracSiteReliability {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    // below this, the outcomes of a site are forgotten
+    private static final double NEGLIGIBLE = 0.01;
+
+    private final Map<String, Counts> sites = new ConcurrentHashMap<>();
+    private final String name;
+    private final long windowMillis;
+    private final double minFailures;
+    private final double failureRatio;
+    private final int maxSites;
+    private final LongSupplier clock;
+    // counts the changes of state of the sites, for the cached list
+    private final AtomicLong changes = new AtomicLong();
+    private volatile UnreliableSites unreliableSites;
+
+    /**
+     * @param name the scope of the counts, for the logs
+     * @param windowMillis time after which an outcome counts for half
+     * @param failureRatio share of failures, between 0 and 1
+     */
+    DiracSiteReliability(String name, long windowMillis, double minFailures, double failureRatio, int maxSites,
+            LongSupplier clock) {
+
+        this.name = name;
+        this.windowMillis = windowMillis;
+        this.minFailures = minFailures;
+        this.failureRatio = failureRatio;
+        this.maxSites = maxSites;
+        this.clock = clock;
+    }
+
+    public void reportSuccess(String siteName) {
+        if (siteName == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        Counts[] previous = new Counts[1];
+        Counts counts = sites.compute(siteName, (site, current) -> {
+            previous[0] = decayed(current, now);
+            return previous[0].add(1, 0);
+        });
+        if (isUnreliable(previous[0]) && !isUnreliable(counts)) {
+            changes.incrementAndGet();
+        }
+        if (sites.size() > maxSites) {
+            evictLeastRecent(siteName);
+        }
+    }
+
+    public void reportFailure(String siteName) {
+        if (siteName == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        Counts[] previous = new Counts[1];
+        Counts counts = sites.compute(siteName, (site, current) -> {
+            previous[0] = decayed(current, now);
+            return previous[0].add(0, 1);
+        });
+        if (isUnreliable(counts) && !isUnreliable(previous[0])) {
+            changes.incrementAndGet();
+            logger.info("[DiracSiteReliability] site " + siteName + " unreliable for " + name + ": "
+                    + String.format("%.1f", counts.failures) + " failures, "
+                    + String.format("%.1f", counts.successes) + " successes");
+        }
+        if (sites.size() > maxSites) {
+            evictLeastRecent(siteName);
+        }
+    }
+
+    public boolean isUnreliable(String siteName) {
+        if (siteName == null) {
+            return false;
+        }
+        Counts counts = sites.get(siteName);
+        return counts != null && isUnreliable(decayed(counts, clock.getAsLong()));
+    }
+
+    /**
+     * @return the unreliable sites, a list shared by the callers until the
+     * state of a site changes
+     */
+    public List<String> getUnreliableSites() {
+        long now = clock.getAsLong();
+        UnreliableSites cached = unreliableSites;
+        if (cached != null && cached.changes == changes.get() && now < cached.validUntil) {
+            return cached.sites;
+        }
+        long seenChanges = changes.get();
+        List<String> list = new ArrayList<>();
+        long validUntil = Long.MAX_VALUE;
+        for (Map.Entry<String, Counts> entry : sites.entrySet()) {
+            Counts current = decayed(entry.getValue(), now);
+            if (isUnreliable(current)) {
+                list.add(entry.getKey());
+                validUntil = Math.min(validUntil, now + Math.min(banMillis(current), Long.MAX_VALUE - now));
+            } else if (current.successes + current.failures < NEGLIGIBLE) {
+                sites.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        cached = new UnreliableSites(List.copyOf(list), seenChanges, validUntil);
+        unreliableSites = cached;
+        return cached.sites;
+    }
+
+    /**
+     * @return the time until the failures of an unreliable site decay below
+     * minFailures
+     */
+    private long banMillis(Counts counts) {
+        return (long) Math.ceil(windowMillis * Math.log(counts.failures / minFailures) / Math.log(2));
+    }
+
+    /**
+     * @return the number of sites whose outcomes have not decayed away
+     */
+    int size() {
+        long now = clock.getAsLong();
+        sites.forEach((siteName, counts) -> {
+            Counts current = decayed(counts, now);
+            if (current.successes + current.failures < NEGLIGIBLE) {
+                sites.remove(siteName, counts);
+            }
+        });
+        return sites.size();
+    }
+
+    private boolean isUnreliable(Counts counts) {
+        return counts.failures >= minFailures
+                && counts.failures >= failureRatio * (counts.successes + counts.failures);
+    }
+
+    private Counts decayed(Counts counts, long now) {
+        if (counts == null) {
+            return new Counts(0, 0, now);
+        }
+        double factor = Math.pow(0.5, (double) Math.max(0, now - counts.updated) / windowMillis);
+        return new Counts(counts.successes * factor, counts.failures * factor, Math.max(now, counts.updated));
+    }
+
+    /**
+     * @param reportedSite the site just reported, which is kept
+     */
+    private void evictLeastRecent(String reportedSite) {
+        while (sites.size() > maxSites) {
+            Optional<Map.Entry<String, Counts>> oldest = sites.entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals(reportedSite))
+                    .min(Comparator.comparingLong(entry -> entry.getValue().updated));
+            if (oldest.isEmpty()) {
+                break;
+            }
+            sites.remove(oldest.get().getKey(), oldest.get().getValue());
+        }
+        // an evicted site may have been unreliable
+        changes.incrementAndGet();
+    }
+
+    double getFailures(String siteName) {
+        Counts counts = sites.get(siteName);
+        return counts == null ? 0 : decayed(counts, clock.getAsLong()).failures;
+    }
+
+    double getSuccesses(String siteName) {
+        Counts counts = sites.get(siteName);
+        return counts == null ? 0 : decayed(counts, clock.getAsLong()).successes;
+    }
+
+    private static class UnreliableSites {
+        private final List<String> sites;
+        private final long changes;
+        private final long validUntil;
+
+        UnreliableSites(List<String> sites, long changes, long validUntil) {
+            this.sites = sites;
+            this.changes = changes;
+            this.validUntil = validUntil;
+        }
+    }
+
+    private static class Counts {
+        private final double successes;
+        private final double failures;
+        private final long updated;
+
+        Counts(double successes, double failures, long updated) {
+            this.successes = successes;
+            this.failures = failures;
+            this.updated = updated;
+        }
+
+        Counts add(double successes, double failures) {
+            return new Counts(this.successes + successes, this.failures + failures, updated);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the sites of the JDL Site field among the configured ones. The
+ * banned sites are left out, as well as the sites whose average turnaround
+ * (queue wait plus run time) is over slowdown times the one of the fastest
+ * site, since their queues are backed up. At least minSites healthy sites
+ * are kept, the fastest ones first. The sites without any statistics, yet
+ * or any more once dropped for their age, are always kept, so that they
+ * get jobs and are measured.
+ */
+public class DiracSiteSelector {
+
+    // turnarounds below a minute are not told apart
+    private static final double MIN_TURNAROUND = TimeUnit.MINUTES.toMillis(1);
+
+    private final DiracSiteStatistics statistics;
+    private final double slowdown;
+    private final int minSites;
+
+    public DiracSiteSelector(DiracSiteStatistics statistics, double slowdown, int minSites) {
+
+        this.statistics = statistics;
+        this.slowdown = slowdown;
+        this.minSites = minSites;
+    }
+
+    /**
+     * @param sites the configured sites, none for any site
+     * @return the sites to submit to, none for any site
+     */
+    public List<String> select(List<String> sites, Collection<String> bannedSites) {
+
+        List<String> healthySites = new ArrayList<>(sites);
+        healthySites.removeAll(bannedSites);
+        if (healthySites.isEmpty()) {
+            // nothing left to choose from, let the ban speak
+            return sites;
+        }
+
+        Map<String, Double> turnarounds = new HashMap<>();
+        List<String> unknownSites = new ArrayList<>();
+        for (String site : healthySites) {
+            Double wait = statistics.getWait(site);
+            if (wait == null) {
+                unknownSites.add(site);
+            } else {
+                Double run = statistics.getRun(site);
+                turnarounds.put(site, run == null ? wait : wait + run);
+            }
+        }
+        List<String> knownSites = new ArrayList<>(turnarounds.keySet());
+        knownSites.sort(Comparator.comparingDouble(turnarounds::get));
+
+        List<String> selected = new ArrayList<>();
+        if (!knownSites.isEmpty()) {
+            double limit = Math.max(MIN_TURNAROUND, turnarounds.get(knownSites.get(0))) * slowdown;
+            for (String site : knownSites) {
+                if (turnarounds.get(site) <= limit || selected.size() + unknownSites.size() < minSites) {
+                    selected.add(site);
+                }
+            }
+        }
+        selected.addAll(unknownSites);
+        return selected;
+    }
+}
@@ -0,0 +1,124 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Queue wait and run time of the jobs on each site, as exponentially
+ * weighted moving averages: each new job weighs ALPHA, so the averages
+ * follow the load of the sites without keeping the past jobs. Reported by
+ * the monitor, read by the site selector.
+ *
+ * The wait of a site is at least the age of its oldest job still queued,
+ * so that a backed up site is seen before its jobs start. The averages of a
+ * site without new jobs for maxAge are dropped: a site left out by the
+ * selector is then tried again and measured anew.
+ */
+public class DiracSiteStatistics {
+
+    private static final double ALPHA = 0.2;
+
+    private final Map<String, Times> sites = new ConcurrentHashMap<>();
+    private volatile Map<String, Long> queuedAges = Map.of();
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+
+    public DiracSiteStatistics(long maxAgeMillis) {
+        this(maxAgeMillis, System::currentTimeMillis);
+    }
+
+    DiracSiteStatistics(long maxAgeMillis, LongSupplier clock) {
+
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @param waitMillis time from the submission to the start of the job
+     */
+    public void reportWait(String siteName, long waitMillis) {
+        long now = clock.getAsLong();
+        sites.compute(siteName, (site, times) -> times == null || isStale(times, now)
+                ? new Times(waitMillis, 1, 0, 0, now)
+                : new Times(average(times.wait, waitMillis), times.waits + 1, times.run, times.runs, now));
+    }
+
+    /**
+     * @param runMillis time from the start to the end of the job
+     */
+    public void reportRun(String siteName, long runMillis) {
+        long now = clock.getAsLong();
+        sites.compute(siteName, (site, times) -> times == null || isStale(times, now)
+                ? new Times(0, 0, runMillis, 1, now)
+                : new Times(times.wait, times.waits, average(times.run, runMillis), times.runs + 1, now));
+    }
+
+    /**
+     * Replaces the ages of the oldest jobs queued on each site, reported
+     * once per monitoring cycle.
+     *
+     * @param ages time since the submission of the oldest queued job, by
+     * site
+     */
+    public void reportQueued(Map<String, Long> ages) {
+        queuedAges = Map.copyOf(ages);
+    }
+
+    private static double average(double average, long sample) {
+        return average + ALPHA * (sample - average);
+    }
+
+    private boolean isStale(Times times, long now) {
+        return now - times.updated > maxAgeMillis;
+    }
+
+    /**
+     * @return the average queue wait of the site, or the age of its oldest
+     * queued job if longer, or null before its first job started or was
+     * queued
+     */
+    public Double getWait(String siteName) {
+        Times times = current(siteName);
+        Long queued = queuedAges.get(siteName);
+        Double wait = times == null || times.waits == 0 ? null : times.wait;
+        if (queued == null) {
+            return wait;
+        }
+        return wait == null ? queued : Math.max(wait, queued);
+    }
+
+    /**
+     * @return the average run time of the site, or null before its first
+     * job ended
+     */
+    public Double getRun(String siteName) {
+        Times times = current(siteName);
+        return times == null || times.runs == 0 ? null : times.run;
+    }
+
+    private Times current(String siteName) {
+        Times times = sites.get(siteName);
+        if (times != null && isStale(times, clock.getAsLong())) {
+            sites.remove(siteName, times);
+            return null;
+        }
+        return times;
+    }
+
+    private static class Times {
+        private final double wait;
+        private final long waits;
+        private final double run;
+        private final long runs;
+        private final long updated;
+
+        Times(double wait, long waits, double run, long runs, long updated) {
+            this.wait = wait;
+            this.waits = waits;
+            this.run = run;
+            this.runs = runs;
+            this.updated = updated;
+        }
+    }
+}
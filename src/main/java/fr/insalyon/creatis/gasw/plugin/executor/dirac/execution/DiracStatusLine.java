@@ -0,0 +1,157 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+/**
+ * One line of dirac-wms-job-status output, parsed in a single pass. Only
+ * the field offsets are recorded: values are extracted from the line when
+ * they are asked for, and the status is matched in place against the
+ * DiracStatus names.
+ *
+ * Both known formats are supported:
+ * <pre>
+ * JobID=121476332 ApplicationStatus=Unknown; MinorStatus=Execution Complete; Status=Done; Site=EGI.LPC.fr;
+ * JobID=2 Status=Done; MinorStatus=Execution Complete; Site=EELA.UTFSM.cl;
+ * </pre>
+ */
+public class DiracStatusLine {
+
+    private static final String JOB_ID = "JobID=";
+    private static final DiracStatus[] STATUSES = DiracStatus.values();
+
+    private final String line;
+    private int jobIdStart, jobIdEnd;
+    private int statusStart = -1, statusEnd;
+    private int minorStatusStart = -1, minorStatusEnd;
+    private int applicationStatusStart = -1, applicationStatusEnd;
+    private int siteStart = -1, siteEnd;
+    private DiracStatus status;
+    private String jobId;
+
+    private DiracStatusLine(String line) {
+        this.line = line;
+    }
+
+    /**
+     * @return the parsed line, or null if it does not contain a job ID
+     */
+    public static DiracStatusLine parse(String line) {
+        int start = line.indexOf(JOB_ID);
+        if (start < 0) {
+            return null;
+        }
+        DiracStatusLine parsed = new DiracStatusLine(line);
+        int length = line.length();
+
+        int pos = start + JOB_ID.length();
+        parsed.jobIdStart = pos;
+        while (pos < length && line.charAt(pos) != ' ' && line.charAt(pos) != ';') {
+            pos++;
+        }
+        parsed.jobIdEnd = pos;
+
+        while (pos < length) {
+            // skip separators before the key
+            char c = line.charAt(pos);
+            if (c == ' ' || c == ';') {
+                pos++;
+                continue;
+            }
+            int keyStart = pos;
+            while (pos < length && line.charAt(pos) != '=' && line.charAt(pos) != ';') {
+                pos++;
+            }
+            if (pos >= length || line.charAt(pos) == ';') {
+                // no value in this segment
+                continue;
+            }
+            int keyEnd = pos;
+            while (keyEnd > keyStart && line.charAt(keyEnd - 1) == ' ') {
+                keyEnd--;
+            }
+            pos++;
+            while (pos < length && line.charAt(pos) == ' ') {
+                pos++;
+            }
+            int valueStart = pos;
+            while (pos < length && line.charAt(pos) != ';') {
+                pos++;
+            }
+            int valueEnd = pos;
+            while (valueEnd > valueStart && line.charAt(valueEnd - 1) == ' ') {
+                valueEnd--;
+            }
+            parsed.setField(keyStart, keyEnd - keyStart, valueStart, valueEnd);
+        }
+        if (parsed.statusStart >= 0) {
+            parsed.status = lookupStatus(line, parsed.statusStart, parsed.statusEnd);
+        }
+        return parsed;
+    }
+
+    private void setField(int keyStart, int keyLength, int valueStart, int valueEnd) {
+        if (isKey(keyStart, keyLength, "Status")) {
+            statusStart = valueStart;
+            statusEnd = valueEnd;
+        } else if (isKey(keyStart, keyLength, "MinorStatus")) {
+            minorStatusStart = valueStart;
+            minorStatusEnd = valueEnd;
+        } else if (isKey(keyStart, keyLength, "ApplicationStatus")) {
+            applicationStatusStart = valueStart;
+            applicationStatusEnd = valueEnd;
+        } else if (isKey(keyStart, keyLength, "Site")) {
+            siteStart = valueStart;
+            siteEnd = valueEnd;
+        }
+    }
+
+    private boolean isKey(int keyStart, int keyLength, String key) {
+        return keyLength == key.length() && line.regionMatches(keyStart, key, 0, keyLength);
+    }
+
+    private static DiracStatus lookupStatus(String line, int start, int end) {
+        int length = end - start;
+        for (DiracStatus s : STATUSES) {
+            String name = s.name();
+            if (name.length() == length && line.regionMatches(start, name, 0, length)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private String value(int start, int end) {
+        return start < 0 ? null : line.substring(start, end);
+    }
+
+    public String getJobId() {
+        if (jobId == null) {
+            jobId = line.substring(jobIdStart, jobIdEnd);
+        }
+        return jobId;
+    }
+
+    /**
+     * @return the DIRAC status, or null if it is missing or unknown
+     */
+    public DiracStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the raw status value, to report unknown statuses
+     */
+    public String getStatusText() {
+        return value(statusStart, statusEnd);
+    }
+
+    public String getMinorStatus() {
+        return value(minorStatusStart, minorStatusEnd);
+    }
+
+    public String getApplicationStatus() {
+        return value(applicationStatusStart, applicationStatusEnd);
+    }
+
+    public String getSite() {
+        return value(siteStart, siteEnd);
+    }
+}
@@ -32,10 +32,27 @@
  */
 package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
@@ -43,18 +60,20 @@ import fr.insalyon.creatis.gasw.GaswConfiguration;
 import fr.insalyon.creatis.gasw.GaswConstants;
 import fr.insalyon.creatis.gasw.GaswException;
 import fr.insalyon.creatis.gasw.GaswInput;
-import fr.insalyon.creatis.gasw.GaswUtil;
 import fr.insalyon.creatis.gasw.bean.Job;
 import fr.insalyon.creatis.gasw.dao.DAOException;
-import fr.insalyon.creatis.gasw.dao.DAOFactory;
-import fr.insalyon.creatis.gasw.dao.JobDAO;
 import fr.insalyon.creatis.gasw.execution.GaswSubmit;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
 import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.DiracDAOFactory;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.DiracJobDAO;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.JobPoolSignal;
 
 public class DiracSubmit extends GaswSubmit {
 
     private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static final Pattern JOB_ID_LINE = Pattern.compile("\\s*JobID\\s*=\\s*(\\d+)\\s*");
+    private static final Pattern JOB_IDS_LINE = Pattern.compile("\\s*JobID\\s*=\\s*\\[?([\\d,\\s]*)\\]?\\s*");
     private static SubmitPool submitPool;
 
     public DiracSubmit(GaswInput gaswInput,
@@ -68,127 +87,540 @@ public class DiracSubmit extends GaswSubmit {
             submitPool.start();
         }
 
+        // GaswSubmit.generateScript() both renders the script and names the
+        // job: the name is only known once it has run, and submit() has to
+        // return it, so it stays on the caller thread. The JDL is rendered
+        // when the job is submitted, and the pool insert is queued.
         scriptName = generateScript();
-        jdlName = generateJdl(scriptName);
+        jdlName = scriptName.substring(0, scriptName.lastIndexOf(".")) + ".jdl";
     }
 
+    /**
+     * Queues the job in the submit pipeline and returns without waiting for
+     * the job to reach the job pool.
+     */
     @Override
     public String submit() throws GaswException {
 
-        try {
-            StringBuilder params = new StringBuilder();
-            for (String p : gaswInput.getParameters()) {
-                params.append(p);
-                params.append(" ");
-            }
-            DiracDAOFactory.getInstance().getJobPoolDAO().add(new JobPool(
-                    jdlName.substring(0, jdlName.lastIndexOf(".")),
-                    gaswInput.getExecutableName(),
-                    params.toString()));
-
-            return jdlName;
-
-        } catch (DAOException ex) {
-            throw new GaswException(ex);
+        StringBuilder params = new StringBuilder();
+        for (String p : gaswInput.getParameters()) {
+            params.append(p);
+            params.append(" ");
         }
-    }
-
-    private String generateJdl(String scriptName) throws GaswException {
-
-        DiracJdlGenerator generator = DiracJdlGenerator.getInstance();
-        return publishJdl(scriptName, generator.generate(scriptName));
+        JobPool jobPool = new JobPool(
+                jdlName.substring(0, jdlName.lastIndexOf(".")),
+                gaswInput.getExecutableName(),
+                params.toString(), JobPool.PRIORITY_DEFAULT, null,
+                GaswConfiguration.getInstance().getSimulationID());
+
+        DiracSubmitPipeline.getInstance().enqueue(jobPool);
+        return jdlName;
     }
 
     /**
-     * DIRAC Submission Thread
+     * DIRAC Submission Thread. The queued jobs are split in batches, submitted
+     * concurrently by the submitters with one dirac-wms-job-submit call each.
+     * The next poll of the job pool waits for all the batches to be done, so
+     * that no job is submitted twice.
+     *
+     * The thread wakes up when a job is added to the pool, waits for the
+     * submit linger to gather more jobs, then polls the pool. The periodic
+     * sweep is kept for the jobs added by other processes.
+     *
+     * Each pass takes one page of the pool, as much as the submitters can
+     * take at once. A full page is followed by the next one without waiting.
+     * The page is leased to this instance, so that several plugin nodes can
+     * share the pool; the entries left unsubmitted are released and the
+     * ones of a crashed node are taken back once their lease expires. The
+     * leases are renewed right before each DIRAC call, and only the entries
+     * still leased are submitted.
+     *
+     * The batch size and the pace of the submissions follow the rate
+     * limiter, which backs off when DIRAC rejects jobs or answers slowly.
+     *
+     * The JDLs are rendered right before each submission, so that a
+     * resubmitted job gets the sites banned since its first attempt.
      */
     private class SubmitPool extends Thread {
 
+        // seconds added to the leases for the database and registration work
+        private static final int LEASE_MARGIN = 60;
+
+        private final ExecutorService submitters;
+        private final String owner;
+        private final DiracSubmitRateLimiter rateLimiter;
+
+        public SubmitPool() throws GaswException {
+            DiracConfiguration conf = DiracConfiguration.getInstance();
+            rateLimiter = new DiracSubmitRateLimiter(conf.getSubmitRateMin(), conf.getSubmitRateMax(),
+                    conf.getSubmitBatchSize(), TimeUnit.SECONDS.toMillis(conf.getSubmitSlow()));
+            owner = ManagementFactory.getRuntimeMXBean().getName() + "-"
+                    + UUID.randomUUID().toString().substring(0, 8);
+            submitters = Executors.newFixedThreadPool(conf.getSubmitWorkers(), r -> {
+                Thread thread = new Thread(r, "dirac-submitter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
         @Override
         public void run() {
 
+            JobPoolSignal signal = JobPoolSignal.getInstance();
             while (true) {
-                Process process = null;
                 try {
+                    long seenVersion = signal.getVersion();
+                    DiracConfiguration conf = DiracConfiguration.getInstance();
+                    int batchSize = rateLimiter.getBatchSize();
+                    int pageSize = batchSize * conf.getSubmitWorkers();
+                    int maxActive = conf.getSubmitMaxActive();
+                    Map<String, Long> activeJobs = maxActive > 0
+                            ? DiracDAOFactory.getInstance().getDiracJobDAO().countActiveJobsBySimulation()
+                            : Map.of();
+                    Set<String> cappedSimulations = new HashSet<>();
+                    activeJobs.forEach((simulationId, count) -> {
+                        if (count >= maxActive) {
+                            cappedSimulations.add(simulationId);
+                        }
+                    });
+                    List<JobPool> jobs = DiracDAOFactory.getInstance().getJobPoolDAO().claim(
+                            owner, pageSize, leaseMillis(conf, pageSize), cappedSimulations);
+                    if (maxActive > 0) {
+                        jobs = withinCap(jobs, activeJobs, maxActive);
+                    }
 
-                    List<String> command = new ArrayList<String>();
-                    command.add("dirac-wms-job-submit");
-                    List<JobPool> jobs = DiracDAOFactory.getInstance().getJobPoolDAO().get();
-
+                    int submitted = 0;
                     if (!jobs.isEmpty()) {
-
-                        for (JobPool job : jobs) {
-                            command.add(GaswConstants.JDL_ROOT + "/" + job.getFileName() + ".jdl");
+                        List<Future<Integer>> batches = new ArrayList<>();
+                        for (int i = 0; i < jobs.size(); i += batchSize) {
+                            List<JobPool> batch = jobs.subList(i, Math.min(i + batchSize, jobs.size()));
+                            batches.add(submitters.submit(() -> submitBatch(batch)));
                         }
+                        for (Future<Integer> batch : batches) {
+                            try {
+                                submitted += batch.get();
+                            } catch (ExecutionException ex) {
+                                logger.error("[DIRAC] error submitting DIRAC jobs", ex.getCause());
+                            }
+                        }
+                    }
+                    if (jobs.size() == pageSize && submitted > 0) {
+                        continue;
+                    }
+                    if (signal.await(seenVersion, GaswConfiguration.getInstance().getDefaultSleeptime() / 2) != seenVersion) {
+                        Thread.sleep(DiracConfiguration.getInstance().getSubmitLinger());
+                    }
 
-                        process = DiracProcessUtils.getDiracProcess(logger, command.toArray(new String[]{}));
+                } catch (GaswException | DAOException ex) {
+                    logger.error("[DIRAC] error submitting DIRAC jobs", ex);
+                } catch (InterruptedException ex) {
+                    logger.error("[DIRAC] jobs submitting thread interrupted" + ex);
+                    submitters.shutdownNow();
+                    break;
+                }
+            }
+        }
 
-                        BufferedReader br = GaswUtil.getBufferedReader(process);
-                        String cout = "";
-                        String s = null;
-                        int i = 0;
+        /**
+         * In parametric mode, the first attempts of a same command share the
+         * same JDL and are submitted together as one parametric job. Retries
+         * and replicas keep a JDL of their own.
+         *
+         * @return the number of submitted jobs
+         */
+        private int submitBatch(List<JobPool> jobs) throws IOException, GaswException, InterruptedException {
 
-                        while ((s = br.readLine()) != null) {
-                            cout += s + "\n";
-                            try {
-                                if (s.startsWith("<==")) {
-                                    // dirac 8 output starts with <=====8.0.24=====>
-                                    // we must ignore that
-                                    continue;
-                                }
-                                String id = s.substring(s.lastIndexOf("=")
-                                        + 2, s.length()).trim();
+            List<String> registeredFiles = new ArrayList<>();
+            try {
+                int submitted = 0;
+                List<JobPool> singleJobs = jobs;
+                if (DiracConfiguration.getInstance().isSubmitParametric()) {
+                    singleJobs = new ArrayList<>();
+                    for (List<JobPool> group : groupParametric(jobs, singleJobs)) {
+                        submitted += submitParametric(group, registeredFiles);
+                    }
+                }
+                if (!singleJobs.isEmpty()) {
+                    submitted += submitJdls(singleJobs, registeredFiles);
+                }
+                return submitted;
+            } finally {
+                release(jobs, registeredFiles);
+            }
+        }
 
-                                Integer.parseInt(id);
-                                JobPool job = jobs.get(i++);
+        private int submitJdls(List<JobPool> jobs, List<String> registeredFiles)
+                throws IOException, GaswException, InterruptedException {
 
-                                signalInvocationJob(job);
+            rateLimiter.acquire(jobs.size());
+            jobs = renew(jobs);
+            if (jobs.isEmpty()) {
+                return 0;
+            }
 
-                                DiracMonitor.getInstance().add(id,
-                                        job.getCommand(), job.getFileName(),
-                                        job.getParams());
+            DiracJdlGenerator generator = DiracJdlGenerator.getInstance();
+            List<String> command = new ArrayList<String>();
+            command.add("dirac-wms-job-submit");
+            Map<String, JobPool> jobsByJdl = new LinkedHashMap<>();
+            for (JobPool job : jobs) {
+                String jdl = GaswConstants.JDL_ROOT + "/" + job.getFileName() + ".jdl";
+                try {
+                    Files.writeString(Paths.get(jdl),
+                            generator.generateForSubmission(job.getFileName() + ".sh", job.getCommand()));
+                } catch (GaswException ex) {
+                    // released with the other unsubmitted jobs
+                    logger.error("[DIRAC] job " + job.getFileName() + " not submitted", ex);
+                    continue;
+                }
+                command.add(jdl);
+                jobsByJdl.put(jdl, job);
+            }
+            if (jobsByJdl.isEmpty()) {
+                return 0;
+            }
+            List<JobPool> sent = new ArrayList<>(jobsByJdl.values());
+
+            long start = System.currentTimeMillis();
+            DiracCommandResult result = DiracProcessUtils.execute(logger, command.toArray(new String[]{}));
+            Map<JobPool, String> jobIds = new LinkedHashMap<>();
+            Map<String, String> jdlJobIds = mapJobIds(command.subList(1, command.size()), result.getOutput());
+            if (jdlJobIds == null) {
+                hold(sent, registeredFiles);
+            } else {
+                jdlJobIds.forEach((jdl, id) -> jobIds.put(jobsByJdl.get(jdl), id));
+            }
 
-                                DiracDAOFactory.getInstance().getJobPoolDAO().remove(job);
-                                logger.info("Dirac Executor Job ID is: " + id + " for " + job.getFileName());
+            return register(jobIds, sent.size(), start, result, registeredFiles);
+        }
 
-                            } catch (Exception ex) {
-                                logger.error("Unable to submit job. DIRAC Error: " + s);
-                                i++;
-                            }
-                        }
-                        process.waitFor();
-                        br.close();
+        /**
+         * Submits invocations of the same command as a single DIRAC
+         * parametric job, with one parameter per invocation.
+         */
+        private int submitParametric(List<JobPool> jobs, List<String> registeredFiles)
+                throws IOException, GaswException, InterruptedException {
+
+            rateLimiter.acquire(jobs.size());
+            jobs = renew(jobs);
+            if (jobs.isEmpty()) {
+                return 0;
+            }
 
-                        if (process.exitValue() != 0) {
-                            logger.error(cout);
-                        }
+            List<String> scriptNames = jobs.stream().map(JobPool::getFileName).toList();
+            Path jdl = Paths.get(GaswConstants.JDL_ROOT, scriptNames.get(0) + "-parametric.jdl");
+            try {
+                Files.writeString(jdl, DiracJdlGenerator.getInstance()
+                        .generateParametric(scriptNames, jobs.get(0).getCommand()));
+            } catch (GaswException ex) {
+                // released with the other unsubmitted jobs
+                logger.error("[DIRAC] parametric job of " + scriptNames + " not submitted", ex);
+                return 0;
+            }
+
+            long start = System.currentTimeMillis();
+            DiracCommandResult result;
+            try {
+                result = DiracProcessUtils.execute(logger, "dirac-wms-job-submit", jdl.toString());
+            } finally {
+                Files.deleteIfExists(jdl);
+            }
+
+            Map<JobPool, String> jobIds = new LinkedHashMap<>();
+            List<String> ids = mapParametricJobIds(jobs.size(), result.getOutput());
+            if (ids == null) {
+                hold(jobs, registeredFiles);
+            } else {
+                // DIRAC returns the IDs in the order of the parameters
+                for (int i = 0; i < ids.size(); i++) {
+                    jobIds.put(jobs.get(i), ids.get(i));
+                }
+            }
+            return register(jobIds, jobs.size(), start, result, registeredFiles);
+        }
+
+        /**
+         * Registers the submitted jobs in the monitor and removes them from
+         * the pool.
+         *
+         * @return the number of submitted jobs
+         */
+        private int register(Map<JobPool, String> jobIds, int sent, long start, DiracCommandResult result,
+                List<String> registeredFiles) {
+
+            long submitted = System.currentTimeMillis();
+            rateLimiter.record(jobIds.size(), sent - jobIds.size(), submitted - start);
+            LongSummaryStatistics latencies = new LongSummaryStatistics();
+            signalInvocationJobs(new ArrayList<>(jobIds.keySet()));
+
+            List<String> removedFiles = new ArrayList<>();
+            for (Map.Entry<JobPool, String> entry : jobIds.entrySet()) {
+                JobPool job = entry.getKey();
+                String id = entry.getValue();
+                try {
+                    DiracMonitor.getInstance().add(id,
+                            job.getCommand(), job.getFileName(),
+                            job.getParams());
+
+                    removedFiles.add(job.getFileName());
+                    logger.info("Dirac Executor Job ID is: " + id + " for " + job.getFileName());
+
+                    if (job.getEnqueued() != null) {
+                        latencies.accept(submitted - job.getEnqueued().getTime());
                     }
-                    Thread.sleep(GaswConfiguration.getInstance().getDefaultSleeptime() / 2);
 
-                } catch (IOException | GaswException | DAOException ex) {
-                    logger.error("[DIRAC] error submitting DIRAC jobs", ex);
-                } catch (InterruptedException ex) {
-                    logger.error("[DIRAC] jobs submitting thread interrupted" + ex);
-                    break;
-                } finally {
-                    closeProcess(process);
+                } catch (GaswException ex) {
+                    logger.error("[DIRAC] error registering DIRAC job " + id + " for " + job.getFileName(), ex);
+                }
+            }
+            registeredFiles.addAll(removedFiles);
+            try {
+                DiracDAOFactory.getInstance().getJobPoolDAO().removeAll(owner, removedFiles);
+            } catch (DAOException ex) {
+                logger.error("[DIRAC] error removing submitted jobs from the pool: " + removedFiles, ex);
+            }
+            if (result.getExitValue() != 0) {
+                logger.error(result.getOutputAsString());
+            }
+            if (latencies.getCount() > 0) {
+                logger.info("[DIRAC] submitted " + jobIds.size() + " jobs, time to submit: mean "
+                        + Math.round(latencies.getAverage()) + " ms, max " + latencies.getMax() + " ms, rate "
+                        + String.format("%.2f", rateLimiter.getRate()) + " jobs/s");
+            }
+            return jobIds.size();
+        }
+
+        /**
+         * A lease outlasts the wait for the rate limiter of the given number
+         * of jobs, at the lowest rate, and a DIRAC call up to the worker
+         * timeout. The configured lease is the lowest one.
+         *
+         * @param queuedJobs jobs that may be submitted before the lease is
+         * renewed
+         */
+        private long leaseMillis(DiracConfiguration conf, int queuedJobs) {
+
+            long rateWait = (long) Math.ceil((double) queuedJobs / Math.max(1, conf.getSubmitRateMin()));
+            return TimeUnit.SECONDS.toMillis(Math.max(conf.getSubmitLease(),
+                    conf.getWorkerTimeout() + rateWait + LEASE_MARGIN));
+        }
+
+        /**
+         * Renews the leases of the jobs right before they are submitted. The
+         * ones whose lease expired and was taken by another node are left to
+         * it.
+         *
+         * @return the jobs still leased
+         */
+        private List<JobPool> renew(List<JobPool> jobs) throws GaswException {
+
+            List<String> fileNames = jobs.stream().map(JobPool::getFileName).toList();
+            Set<String> leased;
+            try {
+                leased = new HashSet<>(DiracDAOFactory.getInstance().getJobPoolDAO()
+                        .renew(owner, fileNames, leaseMillis(DiracConfiguration.getInstance(), 0)));
+            } catch (DAOException ex) {
+                logger.error("[DIRAC] error renewing the leases of jobs, not submitted: " + fileNames, ex);
+                return List.of();
+            }
+            if (leased.size() < jobs.size()) {
+                logger.warn("[DIRAC] leases lost, jobs left to the node holding them: " + fileNames.stream()
+                        .filter(fileName -> !leased.contains(fileName))
+                        .toList());
+            }
+            return jobs.stream().filter(job -> leased.contains(job.getFileName())).toList();
+        }
+
+        /**
+         * Keeps the leases of jobs that DIRAC may have submitted without
+         * their ID being known: released, they would be submitted twice.
+         * They are left in the pool for a manual check, and counted with the
+         * registered ones so that they are not released.
+         */
+        private void hold(List<JobPool> jobs, List<String> registeredFiles) {
+
+            List<String> fileNames = jobs.stream().map(JobPool::getFileName).toList();
+            logger.error("[DIRAC] jobs held in the pool until checked by hand, they may have been submitted"
+                    + " without their DIRAC job ID being known: " + fileNames);
+            try {
+                DiracDAOFactory.getInstance().getJobPoolDAO().hold(owner, fileNames);
+            } catch (DAOException ex) {
+                logger.error("[DIRAC] error holding jobs, they will be submitted again once their lease expires: "
+                        + fileNames, ex);
+            }
+            registeredFiles.addAll(fileNames);
+        }
+
+        /**
+         * Keeps the jobs each simulation can still submit without going over
+         * its cap of active jobs, and releases the other ones. They are
+         * claimed again as the active jobs finish.
+         */
+        private List<JobPool> withinCap(List<JobPool> jobs, Map<String, Long> activeJobs, int maxActive) {
+
+            Map<String, Long> counts = new HashMap<>(activeJobs);
+            List<JobPool> kept = new ArrayList<>();
+            List<JobPool> heldBack = new ArrayList<>();
+            for (JobPool job : jobs) {
+                if (job.getSimulationId() == null
+                        || counts.merge(job.getSimulationId(), 1L, Long::sum) <= maxActive) {
+                    kept.add(job);
+                } else {
+                    heldBack.add(job);
+                }
+            }
+            if (!heldBack.isEmpty()) {
+                logger.debug("[DIRAC] " + heldBack.size() + " jobs held back in the pool, their simulation has "
+                        + maxActive + " active jobs");
+                release(heldBack, List.of());
+            }
+            return kept;
+        }
+
+        /**
+         * Releases the leases of the jobs that were not registered, so they
+         * are tried again with the next page.
+         */
+        private void release(List<JobPool> jobs, List<String> registeredFiles) {
+
+            List<String> unregisteredFiles = new ArrayList<>();
+            for (JobPool job : jobs) {
+                if (!registeredFiles.contains(job.getFileName())) {
+                    unregisteredFiles.add(job.getFileName());
                 }
             }
+            try {
+                DiracDAOFactory.getInstance().getJobPoolDAO().release(owner, unregisteredFiles);
+            } catch (DAOException ex) {
+                logger.error("[DIRAC] error releasing jobs, they will be retried once their lease expires: "
+                        + unregisteredFiles, ex);
+            }
         }
     }
 
-    private void signalInvocationJob(JobPool jobPool) {
-        try {
-            JobDAO jobDAO = DAOFactory.getDAOFactory().getJobDAO();
-            // Defining invocation ID
-            List<Job> list = jobDAO.getByParameters(jobPool.getParams());
-            for (Job job : list) {
-                if (job.isReplicating()) {
-                    job.setReplicating(false);
-                    jobDAO.update(job);
-                    logger.info("Dirac Submit: job \"" + job.getId() + "\" is now replicated");
+    /**
+     * Groups the first attempts of each command. The retries and replicas,
+     * which have a raised priority, and the commands with a single first
+     * attempt are added to singleJobs.
+     *
+     * @return the groups to submit as parametric jobs
+     */
+    static List<List<JobPool>> groupParametric(List<JobPool> jobs, List<JobPool> singleJobs) {
+
+        Map<String, List<JobPool>> commandJobs = new LinkedHashMap<>();
+        for (JobPool job : jobs) {
+            if (job.getPriority() == JobPool.PRIORITY_DEFAULT) {
+                commandJobs.computeIfAbsent(job.getCommand(), c -> new ArrayList<>()).add(job);
+            } else {
+                singleJobs.add(job);
+            }
+        }
+        List<List<JobPool>> groups = new ArrayList<>();
+        for (List<JobPool> group : commandJobs.values()) {
+            if (group.size() > 1) {
+                groups.add(group);
+            } else {
+                singleJobs.addAll(group);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * For a parametric job, dirac-wms-job-submit prints the IDs of all the
+     * jobs on a single "JobID = [n1, n2, ...]" line.
+     *
+     * @return the DIRAC job IDs, in the order of the parameters
+     */
+    static List<String> parseJobIds(List<String> output) {
+
+        List<String> ids = new ArrayList<>();
+        for (String s : output) {
+            Matcher matcher = JOB_IDS_LINE.matcher(s);
+            if (matcher.matches()) {
+                for (String id : matcher.group(1).split(",")) {
+                    if (!id.isBlank()) {
+                        ids.add(id.trim());
+                    }
                 }
+            } else if (s.startsWith("ERROR ")) {
+                logger.error("Unable to submit job. DIRAC Error: " + s);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return the DIRAC job IDs of the parametric job, in the order of the
+     * parameters, none if nothing was submitted, or null if the number of
+     * IDs does not match the number of parameters
+     */
+    static List<String> mapParametricJobIds(int parameters, List<String> output) {
+
+        List<String> ids = parseJobIds(output);
+        if (!ids.isEmpty() && ids.size() != parameters) {
+            logger.error("[DIRAC] " + ids.size() + " job IDs returned for a parametric job of "
+                    + parameters + " invocations, cannot map them: " + String.join("\n", output));
+            return null;
+        }
+        return ids;
+    }
+
+    /**
+     * dirac-wms-job-submit prints a "JobID = n" line for each submitted JDL,
+     * in the order of the arguments, then an "ERROR jdl: message" line for
+     * each failed one. The IDs are given to the JDL files left once the
+     * failed ones are removed. If the number of IDs does not match, nothing
+     * is mapped rather than giving a job the ID of another one.
+     *
+     * @return the DIRAC job IDs by JDL file, for the submitted JDL files, or
+     * null if some jobs were submitted but the IDs cannot be mapped
+     */
+    static Map<String, String> mapJobIds(List<String> jdlFiles, List<String> output) {
+
+        List<String> ids = new ArrayList<>();
+        Set<String> failedJdlFiles = new HashSet<>();
+        for (String s : output) {
+            Matcher matcher = JOB_ID_LINE.matcher(s);
+            if (matcher.matches()) {
+                ids.add(matcher.group(1));
+            } else if (s.startsWith("ERROR ")) {
+                int end = s.indexOf(": ", 6);
+                String jdl = s.substring(6, end < 0 ? s.length() : end);
+                failedJdlFiles.add(jdl);
+                logger.error("Unable to submit job. DIRAC Error: " + s);
+            }
+        }
+
+        List<String> submittedJdlFiles = new ArrayList<>(jdlFiles);
+        submittedJdlFiles.removeAll(failedJdlFiles);
+        Map<String, String> jobIds = new LinkedHashMap<>();
+        if (ids.size() != submittedJdlFiles.size()) {
+            logger.error("[DIRAC] " + ids.size() + " job IDs returned for " + submittedJdlFiles.size()
+                    + " submitted JDL files, cannot map them: " + String.join("\n", output));
+            return ids.isEmpty() ? jobIds : null;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            jobIds.put(submittedJdlFiles.get(i), ids.get(i));
+        }
+        return jobIds;
+    }
+
+    private void signalInvocationJobs(List<JobPool> jobPools) {
+        // first attempts have no previous job to signal
+        Set<Integer> invocationIDs = new HashSet<>();
+        for (JobPool jobPool : jobPools) {
+            if (jobPool.getInvocationId() != null) {
+                invocationIDs.add(jobPool.getInvocationId());
             }
+        }
+        try {
+            DiracJobDAO diracJobDAO = DiracDAOFactory.getInstance().getDiracJobDAO();
+            List<Job> jobs = diracJobDAO.getReplicatingByInvocationIDs(invocationIDs);
+            for (Job job : jobs) {
+                job.setReplicating(false);
+                logger.info("Dirac Submit: job \"" + job.getId() + "\" is now replicated");
+            }
+            diracJobDAO.updateAll(jobs);
 
         } catch (DAOException ex) {
             logger.error("[DIRAC] error signaling replicating event", ex);
@@ -196,22 +628,10 @@ public class DiracSubmit extends GaswSubmit {
     }
 
     public static void terminate() throws InterruptedException {
+        DiracSubmitPipeline.terminate();
         if (submitPool != null) {
             submitPool.interrupt();
             submitPool.join();
         }
     }
-
-    private void closeProcess(Process process) {
-        if (process != null) {
-            try {
-                process.getOutputStream().close();
-                process.getInputStream().close();
-                process.getErrorStream().close();
-            } catch (IOException ex) {
-                logger.error(ex);
-            }
-        }
-        process = null;
-    }
 }
\ No newline at end of file
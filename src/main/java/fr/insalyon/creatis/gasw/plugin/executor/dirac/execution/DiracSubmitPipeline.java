@@ -0,0 +1,217 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import fr.insalyon.creatis.gasw.GaswException;
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.DiracDAOFactory;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.JobPoolDAO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * Adds the submitted jobs to the job pool on a bounded pool of threads, so
+ * that the workflow engine does not wait for the database. At most
+ * queueSize jobs wait for their insert at once: when the queue is full,
+ * enqueue() blocks the caller.
+ *
+ * The jobs queued while an insert is running are added to the pool
+ * together, in a single transaction. The caller already has the name of
+ * the job, so a job is never dropped: the inserts that fail are retried
+ * until they succeed, and shutdown() waits for the queued jobs before a
+ * last attempt.
+ *
+ * The script of a job is still rendered on the caller thread, by the GASW
+ * method that names the job, and its JDL by the submit pool right before
+ * it is submitted: the pipeline only takes the database off the caller
+ * thread.
+ */
+public class DiracSubmitPipeline {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static final int INSERT_BATCH_SIZE = 500;
+    // milliseconds
+    private static final long RETRY_DELAY = 10000;
+    private static final long SHUTDOWN_TIMEOUT = 60;
+    private static DiracSubmitPipeline instance;
+
+    private final JobPoolDAO jobPoolDAO;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final int workers;
+    private final int queueSize;
+    private final long retryDelay;
+    private final AtomicInteger inserts = new AtomicInteger();
+    private final Queue<JobPool> pending = new ConcurrentLinkedQueue<>();
+
+    public synchronized static DiracSubmitPipeline getInstance() throws GaswException {
+        if (instance == null) {
+            try {
+                DiracConfiguration conf = DiracConfiguration.getInstance();
+                instance = new DiracSubmitPipeline(DiracDAOFactory.getInstance().getJobPoolDAO(),
+                        conf.getSubmitPipelineWorkers(), conf.getSubmitPipelineQueueSize(), RETRY_DELAY);
+            } catch (DAOException ex) {
+                throw new GaswException(ex);
+            }
+        }
+        return instance;
+    }
+
+    DiracSubmitPipeline(JobPoolDAO jobPoolDAO, int workers, int queueSize, long retryDelay) {
+
+        this.jobPoolDAO = jobPoolDAO;
+        this.workers = workers;
+        this.queueSize = queueSize;
+        this.retryDelay = retryDelay;
+        this.slots = new Semaphore(queueSize);
+        // daemon threads, shutdown() waits for them
+        this.executor = new ScheduledThreadPoolExecutor(workers, r -> {
+            Thread thread = new Thread(r, "dirac-submit-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the retries left at shutdown get a last attempt in shutdown()
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Queues the insert of a job in the pool, waiting for a free slot if
+     * the queue is full.
+     */
+    public void enqueue(JobPool jobPool) throws GaswException {
+        if (executor.isShutdown()) {
+            throw new GaswException("Submit pipeline stopped, " + jobPool.getFileName() + " not submitted");
+        }
+        try {
+            if (!slots.tryAcquire()) {
+                logger.warn("[DIRAC] submit queue full (" + queueSize + " jobs), waiting to queue "
+                        + jobPool.getFileName());
+                slots.acquire();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new GaswException("Interrupted while queueing " + jobPool.getFileName());
+        }
+        pending.add(jobPool);
+        scheduleInsert(0);
+    }
+
+    /**
+     * Runs an insert, unless workers inserts are already running: the
+     * running ones take the queued jobs when they are done.
+     */
+    private void scheduleInsert(long delay) {
+        int running = inserts.get();
+        while (running < workers) {
+            if (inserts.compareAndSet(running, running + 1)) {
+                try {
+                    executor.schedule(this::insert, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ex) {
+                    // stopped, shutdown() takes the queued jobs
+                    inserts.decrementAndGet();
+                }
+                return;
+            }
+            running = inserts.get();
+        }
+    }
+
+    private void insert() {
+        List<JobPool> failed = List.of();
+        try {
+            List<JobPool> batch = new ArrayList<>();
+            JobPool jobPool;
+            while (batch.size() < INSERT_BATCH_SIZE && (jobPool = pending.poll()) != null) {
+                batch.add(jobPool);
+            }
+            failed = add(batch);
+        } finally {
+            inserts.decrementAndGet();
+        }
+        if (!failed.isEmpty()) {
+            logger.error("[DIRAC] " + failed.size() + " jobs not added to the pool, retrying in "
+                    + retryDelay + " ms");
+            pending.addAll(failed);
+            scheduleInsert(retryDelay);
+        } else if (!pending.isEmpty()) {
+            scheduleInsert(0);
+        }
+    }
+
+    /**
+     * @return the jobs that could not be added
+     */
+    private List<JobPool> add(List<JobPool> batch) {
+        if (batch.isEmpty()) {
+            return List.of();
+        }
+        List<JobPool> failed = new ArrayList<>();
+        try {
+            jobPoolDAO.addAll(batch);
+        } catch (DAOException ex) {
+            logger.error("[DIRAC] error adding " + batch.size() + " jobs to the pool, adding them one by one", ex);
+            for (JobPool entry : batch) {
+                try {
+                    jobPoolDAO.add(entry);
+                } catch (DAOException e) {
+                    logger.error("[DIRAC] job " + entry.getFileName() + " not added to the pool", e);
+                    failed.add(entry);
+                }
+            }
+        }
+        slots.release(batch.size() - failed.size());
+        return failed;
+    }
+
+    /**
+     * @return the number of jobs waiting to be added to the pool
+     */
+    public int getQueueDepth() {
+        return queueSize - slots.availablePermits();
+    }
+
+    /**
+     * @return the number of inserts running or waiting to be retried
+     */
+    public int getInserts() {
+        return inserts.get();
+    }
+
+    /**
+     * Stops accepting jobs and waits for the queued ones to be added to the
+     * pool. The jobs still failing are logged, they are not submitted.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warn("[DIRAC] submit pipeline still adding jobs after " + SHUTDOWN_TIMEOUT + " s");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        List<JobPool> left = new ArrayList<>();
+        JobPool jobPool;
+        while ((jobPool = pending.poll()) != null) {
+            left.add(jobPool);
+        }
+        for (JobPool entry : add(left)) {
+            logger.error("[DIRAC] submit pipeline stopped, job " + entry.getFileName() + " lost");
+        }
+    }
+
+    public synchronized static void terminate() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.log4j.Logger;
+
+/**
+ * Adapts the job submission rate to the load of the DIRAC WMS, with an
+ * additive increase, multiplicative decrease (AIMD) policy. Each clean
+ * batch raises the rate and the batch size a step; a batch with errors or
+ * answered slowly halves them.
+ *
+ * The rate is enforced as a token bucket holding up to one batch: a batch
+ * is sent right away if the bucket holds enough tokens, otherwise it waits
+ * for them to be refilled.
+ */
+public class DiracSubmitRateLimiter {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+
+    private final double minRate;
+    private final double maxRate;
+    private final int maxBatchSize;
+    private final long slowMillis;
+    private final LongSupplier nanoClock;
+    private double rate;
+    private int batchSize;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param minRate lowest rate, in jobs per second
+     * @param maxRate highest rate, in jobs per second
+     * @param slowMillis duration above which a submission is seen as slow
+     */
+    public DiracSubmitRateLimiter(double minRate, double maxRate, int maxBatchSize, long slowMillis) {
+        this(minRate, maxRate, maxBatchSize, slowMillis, System::nanoTime);
+    }
+
+    DiracSubmitRateLimiter(double minRate, double maxRate, int maxBatchSize, long slowMillis,
+            LongSupplier nanoClock) {
+
+        this.minRate = minRate;
+        this.maxRate = Math.max(minRate, maxRate);
+        this.maxBatchSize = maxBatchSize;
+        this.slowMillis = slowMillis;
+        this.nanoClock = nanoClock;
+        this.rate = this.maxRate;
+        this.batchSize = maxBatchSize;
+        this.tokens = maxBatchSize;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Waits until the given number of jobs can be submitted.
+     */
+    public void acquire(int jobs) throws InterruptedException {
+        long delay = reserve(jobs);
+        if (delay > 0) {
+            logger.debug("[DIRAC] submission of " + jobs + " jobs delayed by " + delay + " ms");
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Takes the tokens for the given number of jobs, going into debt if the
+     * bucket does not hold enough of them.
+     *
+     * @return the time to wait before submitting, in milliseconds
+     */
+    synchronized long reserve(int jobs) {
+        refill();
+        tokens -= jobs;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / rate * 1000);
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(batchSize, tokens + (now - lastRefill) / 1e9 * rate);
+        lastRefill = now;
+    }
+
+    /**
+     * Adapts the rate to the outcome of a submission.
+     *
+     * @param failed number of jobs of the batch that were not submitted
+     * @param durationMillis time taken by the submission
+     */
+    public synchronized void record(int submitted, int failed, long durationMillis) {
+        refill();
+        if (failed > 0 || durationMillis > slowMillis) {
+            rate = Math.max(minRate, rate / 2);
+            batchSize = Math.max(1, batchSize / 2);
+            tokens = Math.min(tokens, batchSize);
+            logger.warn("[DIRAC] " + failed + " of " + (submitted + failed) + " jobs failed to submit in "
+                    + TimeUnit.MILLISECONDS.toSeconds(durationMillis) + " s, lowering the submission rate to "
+                    + String.format("%.2f", rate) + " jobs/s, " + batchSize + " jobs per batch");
+        } else if (rate < maxRate || batchSize < maxBatchSize) {
+            rate = Math.min(maxRate, rate + maxRate / 20);
+            batchSize = Math.min(maxBatchSize, batchSize + Math.max(1, maxBatchSize / 20));
+            logger.debug("[DIRAC] raising the submission rate to " + String.format("%.2f", rate)
+                    + " jobs/s, " + batchSize + " jobs per batch");
+        }
+    }
+
+    /**
+     * @return the current rate, in jobs per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return the current number of jobs per dirac-wms-job-submit call
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+}
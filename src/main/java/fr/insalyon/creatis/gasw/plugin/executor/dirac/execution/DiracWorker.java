@@ -0,0 +1,151 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fr.insalyon.creatis.gasw.GaswException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+
+/**
+ * One long-lived DIRAC worker process, driven over a line-delimited JSON
+ * protocol on its stdin/stdout. A worker handles one request at a time.
+ */
+public class DiracWorker {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dirac-worker-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<String> command;
+    private final ProcessBuilderFactory processBuilderFactory;
+    private final long timeoutSeconds;
+    private Process process;
+    private BufferedReader reader;
+    private BufferedWriter writer;
+    private long requestId;
+
+    /**
+     * Creates the process builder of the worker, so that the environment can
+     * be refreshed on each restart.
+     */
+    public interface ProcessBuilderFactory {
+
+        ProcessBuilder create(List<String> command) throws IOException, GaswException;
+    }
+
+    public DiracWorker(List<String> command, ProcessBuilderFactory processBuilderFactory, long timeoutSeconds) {
+        this.command = command;
+        this.processBuilderFactory = processBuilderFactory;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public synchronized boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
+    /**
+     * Runs a dirac-* command in the worker, starting it first if it is not
+     * running. On any protocol error the worker process is stopped, so that
+     * it is restarted on next use.
+     */
+    public synchronized DiracCommandResult execute(String diracCommand, List<String> args) throws IOException {
+        if (!isAlive()) {
+            start();
+        }
+        ObjectNode request = mapper.createObjectNode();
+        request.put("id", ++requestId);
+        request.put("command", diracCommand);
+        args.forEach(request.putArray("args")::add);
+
+        ScheduledFuture<?> timeout = watchdog.schedule(this::kill, timeoutSeconds, TimeUnit.SECONDS);
+        try {
+            writer.write(mapper.writeValueAsString(request));
+            writer.newLine();
+            writer.flush();
+
+            JsonNode response = readMessage();
+            if (response.path("id").asLong() != requestId) {
+                throw new IOException("Unexpected response from DIRAC worker: " + response);
+            }
+            List<String> output = new ArrayList<>();
+            response.path("output").forEach(line -> output.add(line.asText()));
+            return new DiracCommandResult(response.path("exitCode").asInt(1), output);
+
+        } catch (IOException ex) {
+            stop();
+            throw ex;
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    private void start() throws IOException {
+        stop();
+        logger.info("[DIRAC] starting DIRAC worker: " + String.join(" ", command));
+        try {
+            process = processBuilderFactory.create(command).start();
+        } catch (GaswException ex) {
+            throw new IOException(ex);
+        }
+        reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+        ScheduledFuture<?> timeout = watchdog.schedule(this::kill, timeoutSeconds, TimeUnit.SECONDS);
+        try {
+            if (!readMessage().path("ready").asBoolean()) {
+                throw new IOException("DIRAC worker did not report ready");
+            }
+        } catch (IOException ex) {
+            stop();
+            throw ex;
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    private JsonNode readMessage() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("DIRAC worker exited"
+                    + (process.isAlive() ? "" : " with code " + process.exitValue()));
+        }
+        return mapper.readTree(line);
+    }
+
+    private void kill() {
+        Process p = process;
+        if (p != null) {
+            logger.warn("[DIRAC] DIRAC worker did not answer in " + timeoutSeconds + "s, killing it");
+            p.destroyForcibly();
+        }
+    }
+
+    public synchronized void stop() {
+        if (process != null) {
+            try {
+                writer.close();
+                reader.close();
+            } catch (IOException ex) {
+                logger.warn(ex);
+            }
+            process.destroy();
+            process = null;
+        }
+    }
+}
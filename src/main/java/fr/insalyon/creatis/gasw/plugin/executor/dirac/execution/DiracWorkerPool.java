@@ -0,0 +1,107 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import fr.insalyon.creatis.gasw.GaswException;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.DiracConfiguration;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.log4j.Logger;
+
+/**
+ * Small pool of long-lived DIRAC workers. Each call borrows an idle worker,
+ * so at most {@code size} DIRAC requests run at the same time. Workers that
+ * died are restarted on their next use.
+ */
+public class DiracWorkerPool {
+
+    private static final Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
+    private static final String WORKER_SCRIPT = "python/dirac_worker.py";
+    /**
+     * Worker-only command: status of the jobs of a job group updated since a
+     * UTC date, given as "yyyy-MM-dd HH:mm:ss".
+     */
+    public static final String GROUP_STATUS_COMMAND = "gasw-job-group-status";
+    private static final Set<String> SUPPORTED_COMMANDS = Set.of(
+            "dirac-wms-job-status",
+            GROUP_STATUS_COMMAND,
+            "dirac-wms-job-submit",
+            "dirac-wms-job-delete",
+            "dirac-wms-job-reschedule",
+            "dirac-wms-job-get-output");
+    private static DiracWorkerPool instance;
+
+    private final BlockingQueue<DiracWorker> idleWorkers;
+    private final List<DiracWorker> workers;
+
+    public synchronized static DiracWorkerPool getInstance() throws GaswException {
+        if (instance == null) {
+            DiracConfiguration conf = DiracConfiguration.getInstance();
+            instance = new DiracWorkerPool(
+                    Arrays.asList("python3", extractWorkerScript()),
+                    DiracProcessUtils::getDiracProcessBuilder,
+                    conf.getWorkerPoolSize(),
+                    conf.getWorkerTimeout());
+        }
+        return instance;
+    }
+
+    DiracWorkerPool(List<String> workerCommand, DiracWorker.ProcessBuilderFactory processBuilderFactory,
+            int size, long timeoutSeconds) {
+        idleWorkers = new ArrayBlockingQueue<>(size);
+        workers = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            DiracWorker worker = new DiracWorker(workerCommand, processBuilderFactory, timeoutSeconds);
+            workers.add(worker);
+            idleWorkers.add(worker);
+        }
+    }
+
+    public static boolean supports(String command) {
+        return SUPPORTED_COMMANDS.contains(command);
+    }
+
+    public DiracCommandResult execute(String... command) throws IOException, InterruptedException {
+        DiracWorker worker = idleWorkers.take();
+        try {
+            return worker.execute(command[0], Arrays.asList(command).subList(1, command.length));
+        } finally {
+            idleWorkers.put(worker);
+        }
+    }
+
+    public void shutdown() {
+        workers.forEach(DiracWorker::stop);
+    }
+
+    public synchronized static void terminate() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    private static String extractWorkerScript() throws GaswException {
+        try (InputStream in = DiracWorkerPool.class.getClassLoader().getResourceAsStream(WORKER_SCRIPT)) {
+            if (in == null) {
+                throw new GaswException("Missing resource " + WORKER_SCRIPT);
+            }
+            Path script = Files.createTempFile("dirac_worker", ".py");
+            Files.copy(in, script, StandardCopyOption.REPLACE_EXISTING);
+            File file = script.toFile();
+            file.deleteOnExit();
+            logger.info("[DIRAC] DIRAC worker script extracted to " + file.getAbsolutePath());
+            return file.getAbsolutePath();
+        } catch (IOException ex) {
+            throw new GaswException(ex);
+        }
+    }
+}
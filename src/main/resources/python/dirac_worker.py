@@ -0,0 +1,135 @@
+#!/usr/bin/env python
+"""
+Long-lived DIRAC worker driven by the GASW DIRAC plugin.
+
+The DIRAC client is initialised once, then requests are read from stdin, one
+JSON object per line:
+
+    {"id": 1, "command": "dirac-wms-job-status", "args": ["1", "2"]}
+
+and each request gets exactly one JSON line on stdout:
+
+    {"id": 1, "exitCode": 0, "output": ["JobID=1 Status=Done; ..."]}
+
+The output lines mimic the corresponding dirac-* command line tools so that
+the plugin parses them the same way in both modes. Anything DIRAC prints on
+its own is redirected to stderr to keep stdout for the protocol.
+"""
+import json
+import os
+import sys
+
+protocol = os.fdopen(os.dup(sys.stdout.fileno()), "w")
+os.dup2(sys.stderr.fileno(), sys.stdout.fileno())
+
+from DIRAC.Core.Base.Script import Script  # noqa: E402
+
+Script.parseCommandLine(ignoreErrors=True)
+
+from DIRAC import version as dirac_version  # noqa: E402
+from DIRAC.Interfaces.API.Dirac import Dirac  # noqa: E402
+from DIRAC.WorkloadManagementSystem.Client.JobMonitoringClient import JobMonitoringClient  # noqa: E402
+
+dirac = Dirac()
+monitoring = JobMonitoringClient()
+
+
+def status(args):
+    result = dirac.getJobStatus([int(a) for a in args])
+    if not result["OK"]:
+        return 2, ["ERROR: " + str(result["Message"])]
+    lines = []
+    for job_id, values in result["Value"].items():
+        attrs = "; ".join("%s=%s" % (key, value) for key, value in values.items())
+        lines.append("JobID=%s %s;" % (job_id, attrs))
+    return 0, lines
+
+
+def group_status(args):
+    """Status of the jobs of a job group updated since a UTC date."""
+    group, since = args
+    result = monitoring.getJobs({"JobGroup": group}, since)
+    if not result["OK"]:
+        return 2, ["ERROR: " + str(result["Message"])]
+    if not result["Value"]:
+        return 0, []
+    return status(result["Value"])
+
+
+def submit(args):
+    lines = []
+    errors = []
+    for jdl in args:
+        result = dirac.submitJob(jdl)
+        if result["OK"]:
+            lines.append("JobID = %s" % result["Value"])
+        else:
+            errors.append("ERROR %s: %s" % (jdl, result["Message"]))
+    return (2 if errors else 0), lines + errors
+
+
+def per_job(call, args, message):
+    lines = []
+    exit_code = 0
+    for job_id in args:
+        result = call(int(job_id))
+        if result["OK"]:
+            lines.append(message % job_id)
+        else:
+            lines.append("ERROR %s: %s" % (job_id, result["Message"]))
+            exit_code = 2
+    return exit_code, lines
+
+
+def delete(args):
+    return per_job(dirac.deleteJob, args, "Deleted job %s")
+
+
+def reschedule(args):
+    return per_job(dirac.rescheduleJob, args, "Rescheduled job %s")
+
+
+def get_output(args):
+    return per_job(lambda job_id: dirac.getOutputSandbox(job_id, outputDir=os.getcwd()),
+                   args, "Job output sandbox retrieved in %s/")
+
+
+def version(args):
+    return 0, [dirac_version]
+
+
+COMMANDS = {
+    "dirac-wms-job-status": status,
+    "gasw-job-group-status": group_status,
+    "dirac-wms-job-submit": submit,
+    "dirac-wms-job-delete": delete,
+    "dirac-wms-job-reschedule": reschedule,
+    "dirac-wms-job-get-output": get_output,
+    "dirac-version": version,
+}
+
+
+def handle(request):
+    command = COMMANDS.get(request.get("command"))
+    if command is None:
+        return 127, ["Unsupported command: %s" % request.get("command")]
+    try:
+        return command(request.get("args", []))
+    except Exception as ex:  # keep the worker alive whatever happens
+        return 1, ["ERROR: %s" % ex]
+
+
+def main():
+    protocol.write(json.dumps({"ready": True}) + "\n")
+    protocol.flush()
+    for line in sys.stdin:
+        if not line.strip():
+            continue
+        request = json.loads(line)
+        exit_code, output = handle(request)
+        protocol.write(json.dumps({"id": request.get("id"), "exitCode": exit_code, "output": output}) + "\n")
+        protocol.flush()
+
+
+if __name__ == "__main__":
+    main()
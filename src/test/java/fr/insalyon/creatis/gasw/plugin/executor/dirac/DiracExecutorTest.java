@@ -2,40 +2,62 @@ package fr.insalyon.creatis.gasw.plugin.executor.dirac;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
-import org.apache.log4j.Logger;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Test;
-import org.mockito.MockedStatic;
-import org.mockito.Mockito;
+import org.junit.jupiter.api.io.TempDir;
 
 import fr.insalyon.creatis.gasw.GaswException;
-import fr.insalyon.creatis.gasw.GaswUtil;
 
 /**
- * For these tests we assume that dirac is NOT available in the environnement!
+ * DIRAC is not installed in the test environnement: a fake diracosrc puts a
+ * stub dirac-version command in the PATH when it is needed.
  */
 public class DiracExecutorTest {
 
+    @TempDir
+    Path tempDir;
+
+    private void configure(Path diracosrc) {
+        DiracConfiguration.setConfiguration(
+            "host",
+            "defaultPool",
+            0,
+            "mysqlHost",
+            3306,
+            "mysqlUser",
+            false,
+            3306,
+            false,
+            true,
+            Arrays.asList(),
+            Arrays.asList("Any", "Multiple"),
+            Arrays.asList(),
+            Arrays.asList(),
+            diracosrc.toString());
+    }
+
     @Test
     public void testDiracNotAvailable() throws GaswException {
         DiracExecutor executor = new DiracExecutor();
+        configure(tempDir.resolve("missing-diracosrc"));
 
         assertThrows(GaswException.class, () -> executor.checkDiracAvailable());
     }
 
     @Test
-    public void testDiracAvailable() throws GaswException {
+    public void testDiracAvailable() throws IOException {
         DiracExecutor executor = new DiracExecutor();
-        Logger logger = Logger.getLogger("fr.insalyon.creatis.gasw");
-
-        Process mockProcess = mock(Process.class);
-        when(mockProcess.exitValue()).thenReturn(0);
 
-        MockedStatic<GaswUtil> util = Mockito.mockStatic(GaswUtil.class);
-        String diracRcPath = DiracConfiguration.getInstance().getDiracosrcPath();
-        util.when(() -> GaswUtil.getProcess(logger, "bash", "-c", "source " + diracRcPath + "; dirac-version")).thenReturn(mockProcess);
+        Path bin = Files.createDirectory(tempDir.resolve("bin"));
+        Path diracVersion = Files.writeString(bin.resolve("dirac-version"), "#!/bin/sh\necho v8.0.0\n");
+        diracVersion.toFile().setExecutable(true);
+        Path diracosrc = Files.writeString(tempDir.resolve("diracosrc"), "export PATH=" + bin + ":$PATH\n");
+        configure(diracosrc);
 
         assertDoesNotThrow(() -> executor.checkDiracAvailable());
     }
@@ -0,0 +1,343 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.hibernate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Runs against an in-memory H2 database. The connections are wrapped to
+ * count the transactions and the statements sent to the database.
+ */
+@DisplayName("Job pool DAO tests")
+public class JobPoolDataTest {
+
+    private static final int ENTRIES = 10000;
+    private static final int CONSUMERS = 4;
+
+    private CountingConnectionProvider connections;
+    private SessionFactory sessionFactory;
+    private JobPoolData jobPoolData;
+
+    @BeforeEach
+    public void createDatabase() {
+        connections = new CountingConnectionProvider("jdbc:h2:mem:jobpool" + System.nanoTime()
+                + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        Configuration configuration = new Configuration().addAnnotatedClass(JobPool.class);
+        configuration.getProperties().put(AvailableSettings.CONNECTION_PROVIDER, connections);
+        configuration.setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop");
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, "true");
+        sessionFactory = configuration.buildSessionFactory();
+        jobPoolData = new JobPoolData(sessionFactory);
+    }
+
+    @AfterEach
+    public void closeDatabase() {
+        sessionFactory.close();
+    }
+
+    private static List<JobPool> entries(String prefix, int count) {
+        List<JobPool> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(new JobPool(prefix + i, "command", "params " + i));
+        }
+        return entries;
+    }
+
+    private static List<String> fileNames(List<JobPool> entries) {
+        return entries.stream().map(JobPool::getFileName).toList();
+    }
+
+    @Test
+    @DisplayName("Bulk add and remove use one transaction and batched statements")
+    public void bulkOperations() throws Exception {
+        List<JobPool> single = entries("single-", ENTRIES);
+        connections.reset();
+        for (JobPool entry : single) {
+            jobPoolData.add(entry);
+        }
+        assertEquals(ENTRIES, connections.commits.get());
+        assertTrue(connections.executions.get() >= ENTRIES);
+
+        connections.reset();
+        for (JobPool entry : single) {
+            jobPoolData.remove(entry);
+        }
+        assertEquals(ENTRIES, connections.commits.get());
+        assertTrue(connections.executions.get() >= ENTRIES);
+
+        List<JobPool> bulk = entries("bulk-", ENTRIES);
+        connections.reset();
+        jobPoolData.addAll(bulk);
+        assertEquals(1, connections.commits.get());
+        assertTrue(connections.executions.get() <= ENTRIES / 50 + 1);
+        assertEquals(ENTRIES, jobPoolData.getNext(2 * ENTRIES).size());
+
+        jobPoolData.claim("node", ENTRIES, 60000, List.of());
+        connections.reset();
+        jobPoolData.removeAll("node", fileNames(bulk));
+        assertEquals(1, connections.commits.get());
+        assertEquals(ENTRIES / 1000, connections.executions.get());
+        assertTrue(jobPoolData.getNext(ENTRIES).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Raised priorities come first, then commands in turn")
+    public void nextEntries() throws Exception {
+        List<JobPool> entries = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            JobPool entry = new JobPool("big-" + i, "big", "");
+            entry.setEnqueued(new Date(now + i));
+            entries.add(entry);
+        }
+        JobPool small = new JobPool("small-0", "small", "");
+        small.setEnqueued(new Date(now + 10));
+        entries.add(small);
+        JobPool replica = new JobPool("replica-0", "big", "", JobPool.PRIORITY_RETRY);
+        replica.setEnqueued(new Date(now + 20));
+        entries.add(replica);
+        jobPoolData.addAll(entries);
+
+        List<String> next = fileNames(jobPoolData.getNext(4));
+
+        assertEquals("replica-0", next.get(0));
+        assertEquals(List.of("big-0", "big-1", "small-0"), next.subList(1, 4).stream().sorted().toList());
+    }
+
+    @Test
+    @DisplayName("Each command is loaded up to its share, the others making up for the short ones")
+    public void commandShares() throws Exception {
+        List<JobPool> entries = new ArrayList<>();
+        for (String command : List.of("a", "c")) {
+            for (int i = 0; i < 10; i++) {
+                entries.add(new JobPool(command + "-" + i, command, ""));
+            }
+        }
+        entries.add(new JobPool("b-0", "b", ""));
+        jobPoolData.addAll(entries);
+
+        sessionFactory.getStatistics().clear();
+        List<JobPool> next = jobPoolData.getNext(9);
+
+        assertEquals(9, sessionFactory.getStatistics().getEntityLoadCount());
+        assertEquals(9, next.size());
+        assertEquals(9, new HashSet<>(fileNames(next)).size());
+        assertEquals(4, next.stream().filter(entry -> entry.getCommand().equals("a")).count());
+        assertEquals(1, next.stream().filter(entry -> entry.getCommand().equals("b")).count());
+        assertEquals(4, next.stream().filter(entry -> entry.getCommand().equals("c")).count());
+    }
+
+    @ParameterizedTest(name = "skip locked: {0}")
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Concurrent consumers claim each entry exactly once")
+    public void concurrentClaims(boolean skipLocked) throws Exception {
+        JobPoolData dao = new JobPoolData(sessionFactory, skipLocked);
+        dao.addAll(entries("entry-", 1000));
+
+        List<String> claimed = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService consumers = Executors.newFixedThreadPool(CONSUMERS);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < CONSUMERS; i++) {
+            String owner = "node-" + i;
+            tasks.add(() -> {
+                List<JobPool> page;
+                do {
+                    page = dao.claim(owner, 25, 60000, List.of());
+                    for (JobPool entry : page) {
+                        assertEquals(owner, entry.getLeaseOwner());
+                        claimed.add(entry.getFileName());
+                    }
+                } while (!page.isEmpty() || !dao.getNext(1).isEmpty());
+                return null;
+            });
+        }
+        for (Future<Void> task : consumers.invokeAll(tasks)) {
+            task.get();
+        }
+        consumers.shutdown();
+
+        assertEquals(1000, claimed.size());
+        assertEquals(1000, new HashSet<>(claimed).size());
+    }
+
+    @ParameterizedTest(name = "skip locked: {0}")
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Released and expired leases are claimed again")
+    public void leaseExpiry(boolean skipLocked) throws Exception {
+        JobPoolData dao = new JobPoolData(sessionFactory, skipLocked);
+        dao.addAll(entries("entry-", 10));
+
+        assertEquals(5, dao.claim("crashed", 5, -1000, List.of()).size());
+        List<JobPool> held = dao.claim("alive", 3, 60000, List.of());
+        assertEquals(3, held.size());
+        dao.release("alive", List.of(held.get(0).getFileName()));
+        // releasing the entries of another owner has no effect
+        dao.release("other", List.of(held.get(1).getFileName()));
+
+        List<JobPool> reclaimed = dao.claim("new", 10, 60000, List.of());
+        Set<String> names = new HashSet<>(fileNames(reclaimed));
+        assertEquals(8, names.size());
+        assertTrue(names.contains(held.get(0).getFileName()));
+        assertFalse(names.contains(held.get(1).getFileName()));
+        assertFalse(names.contains(held.get(2).getFileName()));
+        assertTrue(dao.claim("new", 10, 60000, List.of()).isEmpty());
+    }
+
+    @ParameterizedTest(name = "skip locked: {0}")
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Held entries are not claimed again once their lease would have expired")
+    public void heldEntries(boolean skipLocked) throws Exception {
+        JobPoolData dao = new JobPoolData(sessionFactory, skipLocked);
+        dao.addAll(entries("entry-", 3));
+
+        List<JobPool> claimed = dao.claim("node", 3, -1000, List.of());
+        dao.hold("node", List.of(claimed.get(0).getFileName()));
+        // holding the entries of another owner has no effect
+        dao.hold("other", List.of(claimed.get(1).getFileName()));
+
+        Set<String> names = new HashSet<>(fileNames(dao.claim("new", 10, 60000, List.of())));
+        assertEquals(Set.of(claimed.get(1).getFileName(), claimed.get(2).getFileName()), names);
+    }
+
+    @ParameterizedTest(name = "skip locked: {0}")
+    @ValueSource(booleans = {true, false})
+    @DisplayName("Leases are renewed and entries removed only by their owner")
+    public void ownedLeases(boolean skipLocked) throws Exception {
+        JobPoolData dao = new JobPoolData(sessionFactory, skipLocked);
+        dao.addAll(entries("entry-", 3));
+        List<String> names = fileNames(dao.claim("node", 3, -1000, List.of()));
+
+        // an expired lease is renewed as long as nobody else claimed the entry
+        assertEquals(List.of(names.get(0)), dao.renew("node", List.of(names.get(0)), 60000));
+        List<String> taken = fileNames(dao.claim("other", 10, 60000, List.of()));
+        assertEquals(Set.of(names.get(1), names.get(2)), new HashSet<>(taken));
+        assertEquals(List.of(names.get(0)), dao.renew("node", names, 60000));
+
+        dao.removeAll("node", names);
+        dao.release("other", taken);
+        assertEquals(Set.copyOf(taken), new HashSet<>(fileNames(dao.getNext(10))));
+    }
+
+    @Test
+    @DisplayName("Entries of excluded simulations are left in the pool")
+    public void excludedSimulations() throws Exception {
+        List<JobPool> entries = new ArrayList<>();
+        for (String simulation : List.of("capped", "open")) {
+            for (int i = 0; i < 3; i++) {
+                entries.add(new JobPool(simulation + "-" + i, "command", "", JobPool.PRIORITY_DEFAULT, null, simulation));
+                entries.add(new JobPool(simulation + "-retry-" + i, "command", "", JobPool.PRIORITY_RETRY, i, simulation));
+            }
+        }
+        entries.add(new JobPool("legacy", "command", ""));
+        jobPoolData.addAll(entries);
+
+        List<JobPool> claimed = jobPoolData.claim("node", 100, 60000, List.of("capped"));
+
+        assertEquals(7, claimed.size());
+        assertTrue(claimed.stream().noneMatch(entry -> "capped".equals(entry.getSimulationId())));
+        assertEquals(6, jobPoolData.claim("node", 100, 60000, List.of()).size());
+    }
+
+    /**
+     * Counts the commits and the statement executions, a JDBC batch
+     * counting as one.
+     */
+    private static class CountingConnectionProvider implements ConnectionProvider {
+
+        private final String url;
+        private final AtomicInteger commits = new AtomicInteger();
+        private final AtomicInteger executions = new AtomicInteger();
+
+        private CountingConnectionProvider(String url) {
+            this.url = url;
+        }
+
+        private void reset() {
+            commits.set(0);
+            executions.set(0);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = DriverManager.getConnection(url, "sa", "");
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("commit")) {
+                            commits.incrementAndGet();
+                        }
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof PreparedStatement statement) {
+                            return countingStatement(statement);
+                        }
+                        return result;
+                    });
+        }
+
+        private PreparedStatement countingStatement(PreparedStatement statement) {
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute")) {
+                            executions.incrementAndGet();
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        @Override
+        public void closeConnection(Connection connection) throws SQLException {
+            connection.close();
+        }
+
+        @Override
+        public boolean supportsAggressiveRelease() {
+            return false;
+        }
+
+        @Override
+        public boolean isUnwrappableAs(Class<?> unwrapType) {
+            return false;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> unwrapType) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Dirac environment cache tests")
+public class DiracEnvironmentTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("The rc file is sourced again only when it changes")
+    public void recaptureOnChange() throws IOException, InterruptedException {
+        File rc = Files.writeString(tempDir.resolve("diracosrc"), "export FAKE_DIRAC=first\n").toFile();
+        DiracEnvironment environment = new DiracEnvironment(rc.getPath());
+
+        assertEquals("first", environment.getEnvironment().get("FAKE_DIRAC"));
+        assertSame(environment.getEnvironment(), environment.getEnvironment());
+
+        Files.writeString(rc.toPath(), "export FAKE_DIRAC=second\n");
+        rc.setLastModified(rc.lastModified() + 2000);
+
+        assertEquals("second", environment.getEnvironment().get("FAKE_DIRAC"));
+    }
+
+    @Test
+    @DisplayName("Commands are found in the PATH of the rc file")
+    public void runCommandFromRcPath() throws IOException, InterruptedException {
+        Path bin = Files.createDirectory(tempDir.resolve("bin"));
+        Path stub = Files.writeString(bin.resolve("dirac-stub"), "#!/bin/sh\necho \"$FAKE_DIRAC $1\"\n");
+        stub.toFile().setExecutable(true);
+        Path rc = Files.writeString(tempDir.resolve("diracosrc"),
+                "export PATH=" + bin + ":$PATH\nexport FAKE_DIRAC=stub\n");
+
+        Process process = new DiracEnvironment(rc.toString()).start("dirac-stub", "42");
+
+        assertEquals("stub 42", new String(process.getInputStream().readAllBytes()).trim());
+        assertEquals(0, process.waitFor());
+    }
+
+    @Test
+    @DisplayName("A command missing from the PATH exits with code 127")
+    public void missingCommand() throws IOException, InterruptedException {
+        Path bin = Files.createDirectory(tempDir.resolve("bin"));
+        Path rc = Files.writeString(tempDir.resolve("diracosrc"), "export PATH=" + bin + ":$PATH\n");
+
+        Process process = new DiracEnvironment(rc.toString()).start("dirac-missing-command");
+
+        process.getInputStream().readAllBytes();
+        assertEquals(127, process.waitFor());
+    }
+}
@@ -0,0 +1,218 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac faulty sites registry tests")
+public class DiracFaultySitesRegistryTest {
+
+    private static final long TTL = TimeUnit.HOURS.toMillis(1);
+    private static final long WINDOW = TTL / 10;
+
+    private AtomicLong clock;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void createClock() {
+        clock = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private void elapse(long millis) {
+        clock.addAndGet(millis);
+    }
+
+    // a site is banned from its first failure
+    private DiracFaultySitesRegistry registry(int maxCommands, int maxSites) {
+        return new DiracFaultySitesRegistry(TTL, maxCommands, maxSites, WINDOW, 0.5, 0.8, clock::get);
+    }
+
+    @Test
+    @DisplayName("A success weighs against the failures instead of lifting the ban")
+    public void successDoesNotClearBan() {
+        DiracFaultySites faultySites = new DiracFaultySitesRegistry(TTL, 10, 10, WINDOW, 3, 0.5, clock::get)
+                .get("command");
+
+        for (int i = 0; i < 3; i++) {
+            faultySites.reportErrorOnSite("site");
+        }
+        assertTrue(faultySites.isBanned("site"));
+
+        faultySites.reportSuccessOnSite("site");
+        assertTrue(faultySites.isBanned("site"));
+        faultySites.reportSuccessOnSite("site");
+        faultySites.reportSuccessOnSite("site");
+        faultySites.reportSuccessOnSite("site");
+        assertFalse(faultySites.isBanned("site"));
+
+        // the ban also ends once the failures have decayed
+        faultySites.reportErrorOnSite("other.site");
+        faultySites.reportErrorOnSite("other.site");
+        faultySites.reportErrorOnSite("other.site");
+        assertEquals(List.of("other.site"), faultySites.getBannedSitesList());
+        elapse(WINDOW);
+        assertEquals(List.of(), faultySites.getBannedSitesList());
+    }
+
+    @Test
+    @DisplayName("The outcomes of jobs without a site are ignored")
+    public void nullSite() {
+        DiracFaultySites faultySites = registry(10, 10).get("command");
+
+        faultySites.reportErrorOnSite(null);
+        faultySites.reportSuccessOnSite(null);
+
+        assertFalse(faultySites.isBanned(null));
+        assertEquals(List.of(), faultySites.getBannedSitesList());
+        assertEquals(0, faultySites.size());
+    }
+
+    @Test
+    @DisplayName("Idle commands are evicted after the TTL, once their outcomes have decayed")
+    public void ttlEviction() {
+        DiracFaultySitesRegistry registry = registry(10, 10);
+        DiracFaultySites faultySites = registry.get("idle");
+        faultySites.reportErrorOnSite("site");
+        registry.get("active").reportErrorOnSite("site");
+
+        elapse(TTL + TimeUnit.MINUTES.toMillis(2));
+        registry.get("active").reportErrorOnSite("site");
+        assertEquals(1, registry.size());
+
+        assertEquals(0, faultySites.size());
+    }
+
+    @Test
+    @DisplayName("The least recently used commands and sites are evicted beyond the bounds")
+    public void lruEviction() {
+        DiracFaultySitesRegistry registry = registry(3, 3);
+        for (int i = 0; i < 5; i++) {
+            registry.get("command-" + i);
+            elapse(1);
+        }
+        assertEquals(3, registry.size());
+
+        DiracFaultySites faultySites = registry.get("command-4");
+        for (int i = 0; i < 5; i++) {
+            faultySites.reportErrorOnSite("site-" + i);
+            elapse(1);
+        }
+        assertEquals(3, faultySites.size());
+        assertEquals(List.of("site-2", "site-3", "site-4"), faultySites.getBannedSitesList().stream().sorted().toList());
+    }
+
+    @Test
+    @DisplayName("A site failing for every command is banned for all of them")
+    public void globalBan() {
+        DiracFaultySitesRegistry registry = new DiracFaultySitesRegistry(TTL, 10, 10, TTL, 3, 0.8, clock::get);
+        registry.get("command-1").reportErrorOnSite("site");
+        registry.get("command-2").reportErrorOnSite("site");
+        registry.get("command-1").reportSuccessOnSite("other.site");
+        assertFalse(registry.get("command-3").isBanned("site"));
+
+        registry.get("command-3").reportErrorOnSite("site");
+        assertTrue(registry.get("command-4").isBanned("site"));
+        assertEquals(List.of("site"), registry.get("command-4").getBannedSitesList());
+        assertFalse(registry.get("command-4").isBanned("other.site"));
+
+        // successes elsewhere bring the failures back below the ratio
+        for (int i = 0; i < 3; i++) {
+            registry.get("command-5").reportSuccessOnSite("site");
+        }
+        assertFalse(registry.get("command-4").isBanned("site"));
+    }
+
+    @Test
+    @DisplayName("Flapping sites are banned for the command despite their successes")
+    public void commandBan() {
+        DiracFaultySitesRegistry registry = new DiracFaultySitesRegistry(TTL, 10, 10, TTL, 3, 0.5, clock::get);
+        DiracFaultySites faultySites = registry.get("command");
+        for (int i = 0; i < 4; i++) {
+            faultySites.reportErrorOnSite("site");
+            faultySites.reportSuccessOnSite("site");
+            registry.get("other").reportSuccessOnSite("site");
+            registry.get("other").reportSuccessOnSite("site");
+        }
+        assertTrue(faultySites.isBanned("site"));
+        assertFalse(registry.get("other").isBanned("site"));
+    }
+
+    @Test
+    @DisplayName("Concurrent errors on a site are all counted")
+    public void concurrentErrors() throws Exception {
+        DiracFaultySitesRegistry registry = registry(100, 100);
+        int threads = 8;
+        int errors = 10000;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < errors; i++) {
+                    DiracFaultySites faultySites = registry.get("command-" + (i % 10));
+                    faultySites.reportErrorOnSite("site");
+                    assertTrue(faultySites.isBanned("site"));
+                    faultySites.getBannedSitesList();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        assertEquals(10, registry.size());
+        for (int c = 0; c < 10; c++) {
+            assertEquals(threads * errors / 10, registry.get("command-" + c).getFailures("site"), 1e-9);
+        }
+    }
+
+    /**
+     * An error and a success racing on the same site, observed once both
+     * are done: both are counted, whatever their order.
+     */
+    @Test
+    @DisplayName("An error racing with a success is counted along with it")
+    public void errorSuccessRace() throws Exception {
+        DiracFaultySitesRegistry registry = new DiracFaultySitesRegistry(TTL, 100, 100, WINDOW, 0.5, 0.6, clock::get);
+        for (int i = 0; i < 2000; i++) {
+            DiracFaultySites faultySites = registry.get("command-" + i);
+            String site = "site-" + i;
+            CyclicBarrier start = new CyclicBarrier(2);
+            Future<?> error = executor.submit(() -> {
+                start.await();
+                faultySites.reportErrorOnSite(site);
+                return null;
+            });
+            Future<?> success = executor.submit(() -> {
+                start.await();
+                faultySites.reportSuccessOnSite(site);
+                return null;
+            });
+            error.get(10, TimeUnit.SECONDS);
+            success.get(10, TimeUnit.SECONDS);
+
+            // a lost failure leaves none, a lost success bans the site
+            assertEquals(1, faultySites.getFailures(site), 1e-9);
+            assertFalse(faultySites.isBanned(site));
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -78,8 +79,9 @@ public class DiracJdlGeneratorTest {
         // Then
         System.out.println(result);
         // Check the common JDL components
-        assertEquals(10, result.split("\n").length);
+        assertEquals(11, result.split("\n").length);
         assertTrue(result.contains("JobName         = \"scriptName - GASW-Dirac-Plugin\";"));
+        assertTrue(result.contains("JobGroup        = \"GASW-Dirac-Plugin\";"));
         assertTrue(result.contains("Executable      = \"scriptName.sh\";"));
         assertTrue(result.contains("StdOutput       = \"std.out\";"));
         assertTrue(result.contains("StdError        = \"std.err\";"));
@@ -100,4 +102,44 @@ public class DiracJdlGeneratorTest {
         System.out.println("inputs[3] :" + inputs[3]);
         assertTrue(inputs[3].endsWith("/workflow.json\"};"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Creation of a parametric JDL")
+    public void creationParametricJdl() throws GaswException {
+        DiracJdlGenerator generator = DiracJdlGenerator.getInstance();
+
+        String result = generator.generateParametric(List.of("command-1", "command-2"), "command");
+
+        assertTrue(result.contains("JobName         = \"%s - GASW-Dirac-Plugin\";"));
+        assertTrue(result.contains("Parameters      = {\"command-1\", \"command-2\"};"));
+        assertTrue(result.contains("Executable      = \"%s.sh\";"));
+        assertTrue(result.contains("OutputSandbox   = {\"std.out\", \"std.err\", \"%s.sh.provenance.json\"};"));
+        assertTrue(result.contains("BannedSite      = \"first.banned.site,second.banned.site\";"));
+
+        String inputsLine = result.lines().filter(l -> l.startsWith("InputSandbox")).findAny().get();
+        String[] inputs = inputsLine.split(",");
+        assertEquals(4, inputs.length);
+        assertTrue(inputs[0].endsWith("/sh/%s.sh\""));
+        assertTrue(inputs[1].endsWith("/inv/%s-invocation.json\""));
+        assertTrue(inputs[2].endsWith("/config/%s-configuration.sh\""));
+    }
+
+    @Test
+    @DisplayName("The JDL generated at submission bans the unreliable sites")
+    public void creationJdlWithFaultySites() throws GaswException {
+        DiracJdlGenerator generator = DiracJdlGenerator.getInstance();
+        for (int i = 0; i < 3; i++) {
+            generator.getDiracFaultySites("faultyCommand").reportErrorOnSite("faulty.site");
+        }
+        generator.getDiracFaultySites("faultyCommand").reportSuccessOnSite("reliable.site");
+
+        String faulty = generator.generateForSubmission("faultyCommand-1.sh", "faultyCommand");
+        // failing for all the commands so far, so banned for the other ones too
+        String other = generator.generateForSubmission("otherCommand-1.sh", "otherCommand");
+
+        assertTrue(faulty.contains("BannedSite      = \"first.banned.site,second.banned.site,faulty.site\";"));
+        assertTrue(other.contains("BannedSite      = \"first.banned.site,second.banned.site,faulty.site\";"));
+        assertTrue(generator.generate("faultyCommand-2.sh")
+                .contains("BannedSite      = \"first.banned.site,second.banned.site\";"));
+    }
+}
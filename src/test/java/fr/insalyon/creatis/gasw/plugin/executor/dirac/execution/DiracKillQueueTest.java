@@ -0,0 +1,137 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac kill queue tests")
+public class DiracKillQueueTest {
+
+    private DiracKillQueue queue;
+
+    @AfterEach
+    public void stopQueue() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    private static Job job(String id) {
+        Job job = mock(Job.class);
+        when(job.getId()).thenReturn(id);
+        return job;
+    }
+
+    @Test
+    @DisplayName("Kills within the linger window are coalesced into one call")
+    public void coalescedKills() throws Exception {
+        List<List<Job>> calls = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch killed = new CountDownLatch(1);
+        queue = new DiracKillQueue(jobs -> {
+            calls.add(jobs);
+            killed.countDown();
+            return jobs;
+        }, 200);
+
+        Job first = job("1");
+        queue.add(first);
+        queue.add(job("2"));
+        queue.add(first);
+        queue.add(job("3"));
+
+        assertTrue(killed.await(10, TimeUnit.SECONDS));
+        assertEquals(1, calls.size());
+        assertEquals(List.of("1", "2", "3"), calls.get(0).stream().map(Job::getId).toList());
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    @DisplayName("A job whose deletion failed is no longer reported queued")
+    public void queuedUntilDeleted() throws Exception {
+        CountDownLatch deleting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue = new DiracKillQueue(jobs -> {
+            deleting.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of();
+        }, 10);
+
+        queue.add(job("1"));
+        assertTrue(queue.isQueued("1"));
+        assertTrue(deleting.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.isQueued("1"));
+        assertFalse(queue.isQueued("2"));
+
+        release.countDown();
+        long end = System.currentTimeMillis() + 10000;
+        while (queue.isQueued("1") && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertFalse(queue.isQueued("1"));
+    }
+
+    @Test
+    @DisplayName("Flushing deletes the pending jobs in the calling thread")
+    public void synchronousFlush() {
+        List<Thread> threads = new ArrayList<>();
+        List<Job> killed = new ArrayList<>();
+        queue = new DiracKillQueue(jobs -> {
+            threads.add(Thread.currentThread());
+            killed.addAll(jobs);
+            return jobs;
+        }, 60000);
+
+        queue.add(job("1"));
+        queue.add(job("2"));
+        queue.flush();
+
+        assertEquals(List.of(Thread.currentThread()), threads);
+        assertEquals(2, killed.size());
+    }
+
+    @Test
+    @DisplayName("A job signaled again before its status is recorded is deleted once")
+    public void deletedOnceAcrossCycles() {
+        List<Job> killed = new ArrayList<>();
+        queue = new DiracKillQueue(jobs -> {
+            killed.addAll(jobs);
+            return jobs;
+        }, 60000);
+        Job job = job("1");
+
+        // first cycle: the job is signaled, then deleted by the queue
+        queue.add(job);
+        queue.flush();
+        assertEquals(List.of(job), queue.getDeleted());
+
+        // second cycle: the job is still KILL in the database and signaled again
+        queue.add(job);
+        assertEquals(0, queue.getPendingCount());
+        queue.flush();
+        assertEquals(1, killed.size());
+
+        // its changes could not be written: it is handed back
+        assertEquals(List.of(job), queue.getDeleted());
+        queue.recorded(queue.getDeleted());
+        assertTrue(queue.getDeleted().isEmpty());
+        assertFalse(queue.isQueued("1"));
+
+        // once recorded, a job can be queued again
+        queue.add(job("1"));
+        assertEquals(1, queue.getPendingCount());
+    }
+}
@@ -0,0 +1,47 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisplayName("Dirac output parser tests")
+public class DiracOutputParserTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("A sandbox is downloaded once its standard output is there")
+    public void downloadedFiles() throws Exception {
+        File outputDirectory = directory.resolve("42").toFile();
+        assertFalse(DiracOutputParser.isDownloaded(outputDirectory));
+
+        Files.createDirectory(outputDirectory.toPath());
+        Files.writeString(outputDirectory.toPath().resolve("std.err"), "partial");
+        assertFalse(DiracOutputParser.isDownloaded(outputDirectory));
+
+        Files.writeString(outputDirectory.toPath().resolve("std.out"), "output");
+        assertTrue(DiracOutputParser.isDownloaded(outputDirectory));
+    }
+
+    @Test
+    @DisplayName("What a previous download left is removed")
+    public void staleFilesRemoved() throws Exception {
+        File outputDirectory = directory.resolve("42").toFile();
+        DiracOutputParser.clearOutputDirectory(outputDirectory);
+
+        Files.createDirectory(outputDirectory.toPath());
+        Files.writeString(outputDirectory.toPath().resolve("std.out"), "stale");
+        Files.writeString(outputDirectory.toPath().resolve("std.err"), "stale");
+        DiracOutputParser.clearOutputDirectory(outputDirectory);
+
+        assertFalse(DiracOutputParser.isDownloaded(outputDirectory));
+        assertEquals(0, outputDirectory.list().length);
+    }
+}
@@ -0,0 +1,162 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac output retriever tests")
+public class DiracOutputRetrieverTest {
+
+    private DiracOutputRetriever retriever;
+
+    @AfterEach
+    public void stopRetriever() {
+        if (retriever != null) {
+            retriever.shutdown();
+        }
+    }
+
+    private static DiracOutputParser parser() {
+        DiracOutputParser parser = mock(DiracOutputParser.class);
+        when(parser.needsOutputFiles()).thenReturn(true);
+        when(parser.parseOutputFiles()).thenReturn(true);
+        return parser;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    @DisplayName("Retrievals are bounded by the workers and the queue size")
+    public void boundedRetrievals() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        DiracOutputParser parser = parser();
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(parser).run();
+        retriever = new DiracOutputRetriever(jobId -> parser, HashSet::new, 2, 4, 1, 0, 0);
+
+        for (int i = 0; i < 4; i++) {
+            retriever.retrieve(String.valueOf(i));
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(2, retriever.getInFlight());
+        assertEquals(2, retriever.getQueueDepth());
+
+        Thread blocked = new Thread(() -> retriever.retrieve("4"));
+        blocked.start();
+        waitFor(() -> blocked.getState() == Thread.State.WAITING);
+
+        release.countDown();
+        blocked.join(10000);
+        assertFalse(blocked.isAlive());
+        waitFor(() -> retriever.getInFlight() == 0 && retriever.getQueueDepth() == 0);
+        verify(parser, times(5)).run();
+    }
+
+    @Test
+    @DisplayName("Sandboxes are downloaded in batches and missing ones retried alone")
+    public void batchedDownloadWithRetries() throws Exception {
+        Map<String, DiracOutputParser> parsers = new HashMap<>();
+        for (int i = 0; i < 6; i++) {
+            parsers.put(String.valueOf(i), parser());
+        }
+        List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        // job 2 is downloaded on its second try, job 5 never
+        DiracOutputRetriever.OutputDownloader downloader = jobIds -> {
+            calls.add(jobIds);
+            Set<String> downloaded = new HashSet<>(jobIds);
+            downloaded.remove("5");
+            if (calls.size() == 1) {
+                downloaded.remove("2");
+            }
+            return downloaded;
+        };
+        retriever = new DiracOutputRetriever(parsers::get, downloader, 1, 10, 10, 2, 0);
+
+        parsers.keySet().forEach(retriever::retrieve);
+        for (DiracOutputParser parser : parsers.values()) {
+            verify(parser, timeout(10000)).run();
+        }
+
+        assertEquals(6, calls.get(0).size());
+        assertTrue(calls.stream().skip(1).allMatch(jobIds -> jobIds.size() <= 2));
+        assertEquals(3, calls.stream().filter(jobIds -> jobIds.contains("5")).count());
+        verify(parsers.get("2")).parseOutputFiles();
+        verify(parsers.get("5"), never()).parseOutputFiles();
+        waitFor(() -> retriever.getQueueDepth() == 0);
+    }
+
+    @Test
+    @DisplayName("The jobs of an interrupted download are retried, then parsed")
+    public void interruptedDownload() throws Exception {
+        DiracOutputParser retried = parser();
+        DiracOutputParser exhausted = parser();
+        Map<String, DiracOutputParser> parsers = Map.of("retried", retried, "exhausted", exhausted);
+        List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        DiracOutputRetriever.OutputDownloader downloader = jobIds -> {
+            calls.add(jobIds);
+            if (calls.size() == 1) {
+                throw new InterruptedException();
+            }
+            return new HashSet<>(jobIds);
+        };
+        retriever = new DiracOutputRetriever(parsers::get, downloader, 1, 10, 10, 1, 0);
+
+        retriever.retrieve("retried");
+        verify(retried, timeout(10000)).run();
+        verify(retried).parseOutputFiles();
+        waitFor(() -> retriever.getQueueDepth() == 0 && retriever.getInFlight() == 0);
+
+        // no retry left: parsed without its output files
+        retriever.shutdown();
+        retriever = new DiracOutputRetriever(parsers::get, downloader, 1, 10, 10, 0, 0);
+        calls.clear();
+        retriever.retrieve("exhausted");
+        verify(exhausted, timeout(10000)).run();
+        verify(exhausted, never()).parseOutputFiles();
+        waitFor(() -> retriever.getQueueDepth() == 0 && retriever.getInFlight() == 0);
+    }
+
+    @Test
+    @DisplayName("Output files without an exit code are downloaded again")
+    public void unparsedOutputRetried() throws Exception {
+        DiracOutputParser parser = parser();
+        when(parser.parseOutputFiles()).thenReturn(false, true);
+        List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        DiracOutputRetriever.OutputDownloader downloader = jobIds -> {
+            calls.add(jobIds);
+            return new HashSet<>(jobIds);
+        };
+        retriever = new DiracOutputRetriever(jobId -> parser, downloader, 1, 10, 10, 2, 0);
+
+        retriever.retrieve("1");
+        verify(parser, timeout(10000)).run();
+        waitFor(() -> retriever.getQueueDepth() == 0 && retriever.getInFlight() == 0);
+        assertEquals(2, calls.size());
+        verify(parser, times(2)).parseOutputFiles();
+        verify(parser, times(1)).run();
+    }
+}
@@ -0,0 +1,101 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac site reliability tests")
+public class DiracSiteReliabilityTest {
+
+    private static final long WINDOW = TimeUnit.HOURS.toMillis(1);
+
+    private AtomicLong clock;
+    private DiracSiteReliability reliability;
+
+    @BeforeEach
+    public void createReliability() {
+        clock = new AtomicLong();
+        reliability = new DiracSiteReliability("test", WINDOW, 3, 0.8, 10, clock::get);
+    }
+
+    @Test
+    @DisplayName("Outcomes count for half after each window")
+    public void decay() {
+        reliability.reportFailure("site");
+        reliability.reportFailure("site");
+        reliability.reportSuccess("site");
+
+        clock.addAndGet(WINDOW);
+        assertEquals(1, reliability.getFailures("site"), 1e-9);
+        assertEquals(0.5, reliability.getSuccesses("site"), 1e-9);
+
+        clock.addAndGet(10 * WINDOW);
+        assertEquals(List.of(), reliability.getUnreliableSites());
+        assertEquals(0, reliability.getFailures("site"), 1e-9);
+    }
+
+    @Test
+    @DisplayName("A site is unreliable from a few failures making up most of its jobs")
+    public void unreliable() {
+        reliability.reportFailure("site");
+        reliability.reportFailure("site");
+        assertFalse(reliability.isUnreliable("site"));
+
+        reliability.reportFailure("site");
+        assertTrue(reliability.isUnreliable("site"));
+        assertEquals(List.of("site"), reliability.getUnreliableSites());
+
+        reliability.reportSuccess("site");
+        assertFalse(reliability.isUnreliable("site"));
+
+        // the success fades away faster than the new failures
+        clock.addAndGet(2 * WINDOW);
+        for (int i = 0; i < 3; i++) {
+            reliability.reportFailure("site");
+        }
+        assertTrue(reliability.isUnreliable("site"));
+    }
+
+    @Test
+    @DisplayName("Sites with successes only are bounded as well")
+    public void boundedSuccesses() {
+        for (int i = 0; i < 20; i++) {
+            clock.incrementAndGet();
+            reliability.reportSuccess("site-" + i);
+        }
+        assertEquals(10, reliability.size());
+        assertEquals(1, reliability.getSuccesses("site-19"), 1e-6);
+        assertEquals(0, reliability.getSuccesses("site-0"), 1e-9);
+    }
+
+    @Test
+    @DisplayName("The unreliable sites are rebuilt when a site changes state or its ban expires")
+    public void cachedUnreliableSites() {
+        for (int i = 0; i < 6; i++) {
+            reliability.reportFailure("site");
+        }
+        List<String> unreliable = reliability.getUnreliableSites();
+        assertEquals(List.of("site"), unreliable);
+        reliability.reportFailure("other");
+        assertTrue(unreliable == reliability.getUnreliableSites());
+
+        // 6 failures decay below 3 after one window
+        clock.addAndGet(WINDOW - 1);
+        assertTrue(unreliable == reliability.getUnreliableSites());
+        clock.addAndGet(2);
+        assertEquals(List.of(), reliability.getUnreliableSites());
+
+        for (int i = 0; i < 3; i++) {
+            reliability.reportFailure("other");
+        }
+        assertEquals(List.of("other"), reliability.getUnreliableSites());
+        reliability.reportSuccess("other");
+        assertEquals(List.of(), reliability.getUnreliableSites());
+    }
+}
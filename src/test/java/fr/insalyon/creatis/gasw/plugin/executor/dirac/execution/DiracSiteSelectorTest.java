@@ -0,0 +1,97 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac site selection tests")
+public class DiracSiteSelectorTest {
+
+    private static final List<String> SITES = List.of("fast", "slow", "backedUp", "new");
+
+    private static final long MAX_AGE = TimeUnit.HOURS.toMillis(6);
+
+    private AtomicLong clock;
+    private DiracSiteStatistics statistics;
+
+    @BeforeEach
+    public void createStatistics() {
+        clock = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+        statistics = new DiracSiteStatistics(MAX_AGE, clock::get);
+        statistics.reportWait("fast", TimeUnit.MINUTES.toMillis(5));
+        statistics.reportRun("fast", TimeUnit.MINUTES.toMillis(10));
+        statistics.reportWait("slow", TimeUnit.MINUTES.toMillis(10));
+        statistics.reportRun("slow", TimeUnit.MINUTES.toMillis(20));
+        statistics.reportWait("backedUp", TimeUnit.HOURS.toMillis(2));
+    }
+
+    @Test
+    @DisplayName("The averages follow the recent jobs")
+    public void movingAverages() {
+        assertEquals(TimeUnit.MINUTES.toMillis(5), statistics.getWait("fast"), 1e-9);
+        assertNull(statistics.getRun("backedUp"));
+        assertNull(statistics.getWait("new"));
+
+        statistics.reportWait("fast", TimeUnit.MINUTES.toMillis(55));
+        assertEquals(TimeUnit.MINUTES.toMillis(15), statistics.getWait("fast"), 1e-9);
+    }
+
+    @Test
+    @DisplayName("The jobs still queued on a site count in its wait")
+    public void queuedJobs() {
+        statistics.reportQueued(Map.of("fast", TimeUnit.HOURS.toMillis(1), "new", TimeUnit.MINUTES.toMillis(1)));
+
+        assertEquals(TimeUnit.HOURS.toMillis(1), statistics.getWait("fast"), 1e-9);
+        assertEquals(TimeUnit.MINUTES.toMillis(1), statistics.getWait("new"), 1e-9);
+        assertEquals(TimeUnit.HOURS.toMillis(2), statistics.getWait("backedUp"), 1e-9);
+        // the fast site falls behind the slow one, the new one is measured
+        assertEquals(List.of("new", "slow", "fast"),
+                new DiracSiteSelector(statistics, 3, 3).select(SITES, List.of()));
+
+        statistics.reportQueued(Map.of());
+        assertEquals(TimeUnit.MINUTES.toMillis(5), statistics.getWait("fast"), 1e-9);
+        assertNull(statistics.getWait("new"));
+    }
+
+    @Test
+    @DisplayName("A site left out is tried again once its statistics are too old")
+    public void staleStatistics() {
+        DiracSiteSelector selector = new DiracSiteSelector(statistics, 3, 1);
+        assertEquals(List.of("fast", "slow", "new"), selector.select(SITES, List.of()));
+
+        clock.addAndGet(MAX_AGE / 2);
+        statistics.reportWait("fast", TimeUnit.MINUTES.toMillis(5));
+        statistics.reportWait("slow", TimeUnit.MINUTES.toMillis(10));
+        clock.addAndGet(MAX_AGE / 2 + 1);
+
+        assertNull(statistics.getWait("backedUp"));
+        assertEquals(List.of("fast", "slow", "backedUp", "new"), selector.select(SITES, List.of()));
+    }
+
+    @Test
+    @DisplayName("Backed up and banned sites are left out, new sites are tried")
+    public void selection() {
+        DiracSiteSelector selector = new DiracSiteSelector(statistics, 3, 1);
+
+        assertEquals(List.of("fast", "slow", "new"), selector.select(SITES, List.of()));
+        assertEquals(List.of("slow", "new"), selector.select(SITES, List.of("fast")));
+    }
+
+    @Test
+    @DisplayName("The fastest sites are kept up to the minimum")
+    public void minimumSites() {
+        DiracSiteSelector selector = new DiracSiteSelector(statistics, 1, 3);
+
+        assertEquals(List.of("fast", "slow", "new"), selector.select(SITES, List.of()));
+        assertEquals(List.of("slow", "backedUp", "new"), selector.select(SITES, List.of("fast")));
+        assertEquals(SITES, selector.select(SITES, SITES));
+        assertEquals(List.of(), selector.select(List.of(), List.of("fast")));
+    }
+}
@@ -0,0 +1,56 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac status line tests")
+public class DiracStatusLineTest {
+
+    @Test
+    @DisplayName("Parse the format with the application status")
+    public void parseWithApplicationStatus() {
+        DiracStatusLine line = DiracStatusLine.parse(
+                "JobID=121476332 ApplicationStatus=Unknown; MinorStatus=Execution Complete; Status=Done; Site=EGI.LPC.fr;");
+
+        assertNotNull(line);
+        assertEquals("121476332", line.getJobId());
+        assertEquals(DiracStatus.Done, line.getStatus());
+        assertEquals("Execution Complete", line.getMinorStatus());
+        assertEquals("Unknown", line.getApplicationStatus());
+        assertEquals("EGI.LPC.fr", line.getSite());
+    }
+
+    @Test
+    @DisplayName("Parse the format without the application status")
+    public void parseWithoutApplicationStatus() {
+        DiracStatusLine line = DiracStatusLine.parse(
+                "JobID=2 Status=Running; MinorStatus=Application; Site=EELA.UTFSM.cl;");
+
+        assertNotNull(line);
+        assertEquals("2", line.getJobId());
+        assertEquals(DiracStatus.Running, line.getStatus());
+        assertEquals("Application", line.getMinorStatus());
+        assertNull(line.getApplicationStatus());
+        assertEquals("EELA.UTFSM.cl", line.getSite());
+    }
+
+    @Test
+    @DisplayName("Unknown statuses and missing fields are reported as null")
+    public void unknownStatusAndMissingSite() {
+        DiracStatusLine line = DiracStatusLine.parse("JobID=3 Status=Exploded; MinorStatus=Boom;");
+
+        assertNotNull(line);
+        assertEquals("3", line.getJobId());
+        assertNull(line.getStatus());
+        assertEquals("Exploded", line.getStatusText());
+        assertNull(line.getSite());
+    }
+
+    @Test
+    @DisplayName("Lines without a job ID are ignored")
+    public void noJobId() {
+        assertNull(DiracStatusLine.parse("ERROR: cannot connect to the JobMonitoring service"));
+    }
+}
@@ -0,0 +1,153 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.dao.JobPoolDAO;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac submit pipeline tests")
+public class DiracSubmitPipelineTest {
+
+    private DiracSubmitPipeline pipeline;
+
+    @AfterEach
+    public void stopPipeline() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static JobPool jobPool(String name) {
+        return new JobPool(name, "command", "");
+    }
+
+    @Test
+    @DisplayName("Queued jobs are added to the pool in batches")
+    public void batchedInserts() throws Exception {
+        List<String> added = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        JobPoolDAO dao = mock(JobPoolDAO.class);
+        doAnswer(invocation -> {
+            Collection<JobPool> entries = invocation.getArgument(0);
+            batches.add(entries.size());
+            entries.forEach(entry -> added.add(entry.getFileName()));
+            return null;
+        }).when(dao).addAll(anyCollection());
+        pipeline = new DiracSubmitPipeline(dao, 4, 1000, 10);
+
+        for (int i = 0; i < 1000; i++) {
+            pipeline.enqueue(jobPool("job-" + i));
+        }
+
+        waitFor(() -> added.size() == 1000);
+        assertTrue(batches.size() < 1000);
+        waitFor(() -> pipeline.getQueueDepth() == 0 && pipeline.getInserts() == 0);
+    }
+
+    @Test
+    @DisplayName("A full queue blocks the caller")
+    public void backpressure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        JobPoolDAO dao = mock(JobPoolDAO.class);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(dao).addAll(anyCollection());
+        pipeline = new DiracSubmitPipeline(dao, 1, 2, 10);
+
+        pipeline.enqueue(jobPool("job-0"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        pipeline.enqueue(jobPool("job-1"));
+        assertEquals(2, pipeline.getQueueDepth());
+
+        Thread blocked = new Thread(() -> {
+            try {
+                pipeline.enqueue(jobPool("job-2"));
+            } catch (Exception ex) {
+                fail(ex);
+            }
+        });
+        blocked.start();
+        waitFor(() -> blocked.getState() == Thread.State.WAITING);
+
+        release.countDown();
+        blocked.join(10000);
+        assertFalse(blocked.isAlive());
+        waitFor(() -> pipeline.getQueueDepth() == 0);
+    }
+
+    @Test
+    @DisplayName("A failed insert is retried until the job reaches the pool")
+    public void failedInsertRetried() throws Exception {
+        AtomicInteger failures = new AtomicInteger(3);
+        List<String> added = Collections.synchronizedList(new ArrayList<>());
+        JobPoolDAO dao = mock(JobPoolDAO.class);
+        doAnswer(invocation -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new DAOException("database down");
+            }
+            Collection<JobPool> entries = invocation.getArgument(0);
+            entries.forEach(entry -> added.add(entry.getFileName()));
+            return null;
+        }).when(dao).addAll(anyCollection());
+        doThrow(new DAOException("database down")).when(dao).add(any());
+        pipeline = new DiracSubmitPipeline(dao, 1, 10, 10);
+
+        pipeline.enqueue(jobPool("job-0"));
+
+        waitFor(() -> added.equals(List.of("job-0")));
+        waitFor(() -> pipeline.getQueueDepth() == 0);
+    }
+
+    @Test
+    @DisplayName("Shutting down adds the queued jobs to the pool")
+    public void shutdownDrainsQueue() throws Exception {
+        List<String> added = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failures = new AtomicInteger(1);
+        JobPoolDAO dao = mock(JobPoolDAO.class);
+        doAnswer(invocation -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new DAOException("database down");
+            }
+            Collection<JobPool> entries = invocation.getArgument(0);
+            entries.forEach(entry -> added.add(entry.getFileName()));
+            return null;
+        }).when(dao).addAll(anyCollection());
+        doThrow(new DAOException("database down")).when(dao).add(any());
+        // the retry would only come after the shutdown
+        pipeline = new DiracSubmitPipeline(dao, 1, 100, TimeUnit.HOURS.toMillis(1));
+
+        for (int i = 0; i < 50; i++) {
+            pipeline.enqueue(jobPool("job-" + i));
+        }
+        pipeline.shutdown();
+
+        assertEquals(50, added.size());
+        assertEquals(0, pipeline.getQueueDepth());
+        assertThrows(Exception.class, () -> pipeline.enqueue(jobPool("late")));
+    }
+}
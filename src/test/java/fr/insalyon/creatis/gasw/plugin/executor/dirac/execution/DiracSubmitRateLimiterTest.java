@@ -0,0 +1,81 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac submit rate limiter tests")
+public class DiracSubmitRateLimiterTest {
+
+    private AtomicLong clock;
+    private DiracSubmitRateLimiter limiter;
+
+    @BeforeEach
+    public void createLimiter() {
+        clock = new AtomicLong();
+        limiter = new DiracSubmitRateLimiter(1, 100, 100, 60000, clock::get);
+    }
+
+    private void elapse(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    @DisplayName("A full bucket lets a batch through, then the rate applies")
+    public void tokenBucket() {
+        assertEquals(0, limiter.reserve(100));
+        assertEquals(500, limiter.reserve(50));
+
+        elapse(1500);
+        assertEquals(0, limiter.reserve(100));
+    }
+
+    @Test
+    @DisplayName("Errors and slow submissions halve the rate, clean batches raise it")
+    public void additiveIncreaseMultiplicativeDecrease() {
+        limiter.record(90, 10, 1000);
+        assertEquals(50, limiter.getRate(), 0.001);
+        assertEquals(50, limiter.getBatchSize());
+
+        limiter.record(50, 0, 120000);
+        assertEquals(25, limiter.getRate(), 0.001);
+        assertEquals(25, limiter.getBatchSize());
+
+        limiter.record(25, 0, 1000);
+        assertEquals(30, limiter.getRate(), 0.001);
+        assertEquals(30, limiter.getBatchSize());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.record(1, 1, 1000);
+        }
+        assertEquals(1, limiter.getRate(), 0.001);
+        assertEquals(1, limiter.getBatchSize());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.record(1, 0, 1000);
+        }
+        assertEquals(100, limiter.getRate(), 0.001);
+        assertEquals(100, limiter.getBatchSize());
+    }
+
+    @Test
+    @DisplayName("A lowered rate spaces the submissions out")
+    public void backoffDelaysSubmissions() {
+        assertEquals(0, limiter.reserve(100));
+        for (int i = 0; i < 6; i++) {
+            limiter.record(0, 10, 1000);
+        }
+        assertEquals(1, limiter.getBatchSize());
+        assertTrue(limiter.getRate() < 2);
+
+        elapse(10000);
+        assertEquals(0, limiter.reserve(1));
+        long delay = limiter.reserve(1);
+        assertTrue(delay >= 500 && delay <= 1000, "delay " + delay);
+    }
+}
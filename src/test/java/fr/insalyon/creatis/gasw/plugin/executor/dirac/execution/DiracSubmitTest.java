@@ -0,0 +1,78 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import fr.insalyon.creatis.gasw.plugin.executor.dirac.bean.JobPool;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Dirac submit tests")
+public class DiracSubmitTest {
+
+    private static final List<String> JDL_FILES = List.of("jdl/a.jdl", "jdl/b.jdl", "jdl/c.jdl");
+
+    @Test
+    @DisplayName("Job IDs are mapped to the JDL files in order")
+    public void mapAllJobIds() {
+        Map<String, String> jobIds = DiracSubmit.mapJobIds(JDL_FILES,
+                List.of("<=====8.0.24=====>", "JobID = 11", "JobID = 12", "JobID = 13"));
+
+        assertEquals(Map.of("jdl/a.jdl", "11", "jdl/b.jdl", "12", "jdl/c.jdl", "13"), jobIds);
+    }
+
+    @Test
+    @DisplayName("Failed JDL files are skipped")
+    public void mapPartialSubmission() {
+        Map<String, String> jobIds = DiracSubmit.mapJobIds(JDL_FILES,
+                List.of("JobID = 11", "JobID = 13", "ERROR jdl/b.jdl: Invalid JDL"));
+
+        assertEquals(Map.of("jdl/a.jdl", "11", "jdl/c.jdl", "13"), jobIds);
+    }
+
+    @Test
+    @DisplayName("Nothing is mapped when the IDs do not match the JDL files")
+    public void mapUnexpectedOutput() {
+        // some jobs were submitted: the caller must not release them
+        assertNull(DiracSubmit.mapJobIds(JDL_FILES, List.of("JobID = 11", "JobID = 12")));
+
+        // nothing was submitted: the jobs can be released
+        assertTrue(DiracSubmit.mapJobIds(JDL_FILES, List.of("Proxy expired")).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Parametric job IDs are read from a single line, in order")
+    public void parseParametricJobIds() {
+        assertEquals(List.of("11", "12", "13"), DiracSubmit.parseJobIds(
+                List.of("<=====8.0.24=====>", "JobID = [11, 12, 13]")));
+        assertEquals(List.of("11"), DiracSubmit.parseJobIds(List.of("JobID = 11")));
+        assertTrue(DiracSubmit.parseJobIds(List.of("ERROR jdl/a.jdl: Invalid JDL")).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Parametric job IDs are not mapped when their number does not match")
+    public void mapParametricUnexpectedOutput() {
+        assertEquals(List.of("11", "12", "13"), DiracSubmit.mapParametricJobIds(3,
+                List.of("JobID = [11, 12, 13]")));
+        assertNull(DiracSubmit.mapParametricJobIds(3, List.of("JobID = [11, 12]")));
+        assertTrue(DiracSubmit.mapParametricJobIds(3, List.of("ERROR jdl/a.jdl: Invalid JDL")).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Only the first attempts of a command are grouped in a parametric job")
+    public void parametricGroups() {
+        JobPool first = new JobPool("first", "a", "");
+        JobPool second = new JobPool("second", "a", "");
+        JobPool retry = new JobPool("retry", "a", "", JobPool.PRIORITY_RETRY);
+        JobPool alone = new JobPool("alone", "b", "");
+        List<JobPool> singleJobs = new ArrayList<>();
+
+        List<List<JobPool>> groups = DiracSubmit.groupParametric(List.of(first, retry, alone, second), singleJobs);
+
+        assertEquals(List.of(List.of(first, second)), groups);
+        assertEquals(List.of(retry, alone), singleJobs);
+    }
+}
@@ -0,0 +1,79 @@
+package fr.insalyon.creatis.gasw.plugin.executor.dirac.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Uses the python stand-in worker, which speaks the same protocol as the
+ * real DIRAC worker without needing DIRAC.
+ */
+@DisplayName("Dirac worker pool tests")
+public class DiracWorkerPoolTest {
+
+    private DiracWorkerPool pool;
+
+    @BeforeEach
+    public void createPool() throws Exception {
+        assumeTrue(isPythonAvailable(), "python3 is needed to run the fake DIRAC worker");
+        String worker = Paths.get(getClass().getResource("/python/fake_dirac_worker.py").toURI()).toString();
+        pool = new DiracWorkerPool(Arrays.asList("python3", worker),
+                command -> new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT), 1, 30);
+    }
+
+    @AfterEach
+    public void stopPool() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static boolean isPythonAvailable() {
+        try {
+            return new ProcessBuilder("python3", "--version").start().waitFor() == 0;
+        } catch (IOException | InterruptedException ex) {
+            return false;
+        }
+    }
+
+    @Test
+    @DisplayName("Submit then get status through the same worker")
+    public void submitAndStatus() throws Exception {
+        DiracCommandResult submit = pool.execute("dirac-wms-job-submit", "a.jdl", "b.jdl");
+        assertEquals(0, submit.getExitValue());
+        assertEquals(List.of("JobID = 1", "JobID = 2"), submit.getOutput());
+
+        DiracCommandResult status = pool.execute("dirac-wms-job-status", "1", "2");
+        assertEquals(0, status.getExitValue());
+        assertEquals(2, status.getOutput().size());
+        assertTrue(status.getOutput().get(0).startsWith("JobID=1 Status=Received;"));
+    }
+
+    @Test
+    @DisplayName("A dead worker is restarted on next use")
+    public void restartAfterCrash() throws Exception {
+        String firstPid = pool.execute("pid").getOutputAsString();
+
+        assertThrows(IOException.class, () -> pool.execute("exit"));
+
+        String secondPid = pool.execute("pid").getOutputAsString();
+        assertNotEquals(firstPid, secondPid);
+        assertEquals(0, pool.execute("dirac-wms-job-delete", "1").getExitValue());
+    }
+
+    @Test
+    @DisplayName("Unsupported commands are reported, not fatal")
+    public void unsupportedCommand() throws Exception {
+        assertEquals(127, pool.execute("dirac-unknown").getExitValue());
+        assertEquals(0, pool.execute("dirac-version").getExitValue());
+    }
+}
@@ -0,0 +1,53 @@
+#!/usr/bin/env python3
+"""
+Stand-in for dirac_worker.py that speaks the same line-delimited JSON
+protocol without needing a DIRAC installation. Jobs only live in memory.
+The "exit" command makes the worker die, to test automatic restarts.
+"""
+import json
+import os
+import sys
+
+jobs = {}
+next_id = [1]
+
+
+def handle(command, args):
+    if command == "dirac-wms-job-submit":
+        lines = []
+        for _ in args:
+            jobs[str(next_id[0])] = "Received"
+            lines.append("JobID = %d" % next_id[0])
+            next_id[0] += 1
+        return 0, lines
+    if command == "dirac-wms-job-status":
+        lines = ["JobID=%s Status=%s; MinorStatus=Fake; Site=FAKE.site.fr;" % (a, jobs[a])
+                 for a in args if a in jobs]
+        return (0 if len(lines) == len(args) else 2), lines
+    if command == "gasw-job-group-status":
+        return 0, ["JobID=%s Status=%s; MinorStatus=Fake; Site=FAKE.site.fr;" % (i, s)
+                   for i, s in jobs.items()]
+    if command == "dirac-wms-job-delete":
+        for a in args:
+            jobs[a] = "Deleted"
+        return 0, ["Deleted job %s" % a for a in args]
+    if command == "dirac-wms-job-reschedule":
+        for a in args:
+            jobs[a] = "Received"
+        return 0, ["Rescheduled job %s" % a for a in args]
+    if command == "dirac-wms-job-get-output":
+        return 0, ["Job output sandbox retrieved in %s/" % a for a in args]
+    if command == "dirac-version":
+        return 0, ["fake"]
+    if command == "pid":
+        return 0, [str(os.getpid())]
+    if command == "exit":
+        sys.exit(1)
+    return 127, ["Unsupported command: %s" % command]
+
+
+print(json.dumps({"ready": True}), flush=True)
+for line in sys.stdin:
+    request = json.loads(line)
+    exit_code, output = handle(request["command"], request.get("args", []))
+    print(json.dumps({"id": request["id"], "exitCode": exit_code, "output": output}), flush=True)